@@ -0,0 +1,59 @@
+package org.isatools.classification.benchmark;
+
+import org.isatools.classification.ClassificationSchema;
+import org.isatools.classification.ElementSet;
+import org.isatools.classification.fitness.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time taken by a single FitnessMetric to score every schema of a synthetic dataset against all of its elements.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FitnessMetricBenchmark {
+
+    @Param({"COVERAGE", "POTENTIAL_USAGE", "SUBCLASS_COUNT", "SUBTREE_BALANCE"})
+    public MetricType metricType;
+
+    private FitnessMetric metric;
+    private List<ClassificationSchema> schemas;
+    private ElementSet elements;
+
+    @Setup(Level.Trial)
+    public void setUp(SyntheticDatasetState state) {
+        switch (metricType) {
+            case COVERAGE:
+                metric = new CoverageMetric();
+                break;
+            case POTENTIAL_USAGE:
+                metric = new PotentialUsageMetric();
+                break;
+            case SUBCLASS_COUNT:
+                metric = new SubclassCountMetric();
+                break;
+            default:
+                metric = new SubtreeBalanceMetric();
+        }
+        schemas = new ArrayList<ClassificationSchema>(state.dataset.getSchemas());
+        elements = state.dataset.getClassifiedElements();
+    }
+
+    @Benchmark
+    public double calculate() {
+        double total = 0;
+        for (ClassificationSchema schema : schemas) {
+            total += metric.calculate(schema, elements);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,47 @@
+package org.isatools.classification.benchmark;
+
+import org.apache.commons.math.MathException;
+import org.isatools.classification.Statistics;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time taken by the statistical scores used by the SubtreeBalanceMetric, over the per classification counts of a
+ * schema.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatisticsBenchmark {
+
+    @Param({"5", "50"})
+    public int classifications;
+
+    private double[] counts;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        counts = new double[classifications];
+        for (int classification = 0; classification < classifications; classification++) {
+            counts[classification] = 1 + random.nextInt(10000);
+        }
+    }
+
+    @Benchmark
+    public double normalDistributionScore() {
+        return Statistics.calculateNormalDistributionScore(counts);
+    }
+
+    @Benchmark
+    public double chiTestScore() throws MathException {
+        return Statistics.calculateChiTestScore(counts);
+    }
+}
@@ -0,0 +1,55 @@
+package org.isatools.classification.benchmark;
+
+import org.isatools.classification.ClassificationDataset;
+import org.isatools.classification.io.SyntheticMatrixGenerator;
+import org.isatools.classification.io.TabularMatrixLoader;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A dataset of elements x schemas x classifications produced by the SyntheticMatrixGenerator. Each schema classifies
+ * an element with the given density, so density 1 means every schema classifies every element.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+@State(Scope.Benchmark)
+public class SyntheticDatasetState {
+
+    @Param({"10000"})
+    public int elements;
+
+    @Param({"20"})
+    public int schemas;
+
+    @Param({"5"})
+    public int classificationsPerSchema;
+
+    @Param({"0.5"})
+    public double density;
+
+    @Param({"42"})
+    public long seed;
+
+    public ClassificationDataset dataset;
+
+    @Setup(Level.Trial)
+    public void createDataset() throws IOException {
+        SyntheticMatrixGenerator generator = new SyntheticMatrixGenerator(elements, schemas, classificationsPerSchema);
+        generator.setDensity(density);
+        generator.setSeed(seed);
+
+        File matrixFile = File.createTempFile("synthetic-matrix", ".txt");
+        try {
+            generator.generate(matrixFile);
+            dataset = new TabularMatrixLoader().load(matrixFile);
+        } finally {
+            matrixFile.delete();
+        }
+    }
+}
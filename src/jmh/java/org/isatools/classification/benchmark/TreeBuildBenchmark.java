@@ -0,0 +1,41 @@
+package org.isatools.classification.benchmark;
+
+import org.isatools.classification.ClassificationNode;
+import org.isatools.classification.Classifier;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end time to build the classification tree for a synthetic dataset, without writing it out.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TreeBuildBenchmark {
+
+    @Param({"1"})
+    public int parallelism;
+
+    private Classifier classifier;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        classifier = new Classifier(parallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        classifier.shutdown();
+    }
+
+    @Benchmark
+    public ClassificationNode buildTree(SyntheticDatasetState state) {
+        return classifier.classify(state.dataset);
+    }
+}
@@ -0,0 +1,215 @@
+package org.isatools.classification;
+
+import org.isatools.classification.fitness.MetricType;
+import org.isatools.classification.io.BinaryTreeReader;
+import org.isatools.classification.io.BinaryTreeWriter;
+import org.isatools.classification.io.JsonTreeWriter;
+import org.isatools.classification.monitor.ClassificationMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Command line entry point which classifies a process matrix and writes the resulting trees without a display, for
+ * running on headless machines. Nothing in the visualise package apart from TreeViewXMLCreator is touched, so AWT,
+ * Swing and prefuse are never loaded.
+ * <p/>
+ * Output formats are chosen from the file names: .xml (or .xml.gz) for TreeML, .json for JSON and .ctgt for the
+ * binary tree format. A summary of where the time went, from loading to writing the trees, is logged at INFO once
+ * the trees are written.
+ * <p/>
+ * Given the binary tree written by an earlier run and the matrix it was built from, only the parts of the tree holding
+ * rows which have changed since are classified again, see Classifier.reclassify().
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public class BatchClassifier {
+
+    private static final Logger log = Logger.getLogger(BatchClassifier.class.getName());
+
+    private static final String USAGE = "Usage: BatchClassifier <process file> [--tree <file>] [--schema-tree <file>] " +
+            "[--weight <METRIC>=<weight>]... [--threads <count>] [--beam-width <count>] [--beam-depth <levels>] " +
+            "[--out-of-core] [--previous-tree <file> --previous-matrix <file>]\n" +
+            "  tree files are written as TreeML (.xml, .xml.gz), JSON (.json) or binary (.ctgt)\n" +
+            "  metrics are COVERAGE, POTENTIAL_USAGE, SUBCLASS_COUNT and SUBTREE_BALANCE\n" +
+            "  --out-of-core leaves the membership columns of a binary matrix on disk\n" +
+            "  --previous-tree (.ctgt) and --previous-matrix give an earlier run to reclassify incrementally from";
+
+    private File processFile;
+    private File treeFile;
+    private File schemaSelectionFile;
+    private Map<MetricType, Double> metricWeights = new HashMap<MetricType, Double>();
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    // greedy selection unless both are raised
+    private int beamWidth = 1;
+    private int beamDepth = 0;
+    private boolean outOfCore;
+    // both null unless reclassifying from an earlier run
+    private File previousTreeFile;
+    private File previousProcessFile;
+
+    /**
+     * @param args - command line arguments, see USAGE
+     * @throws IllegalArgumentException if the arguments can't be understood
+     */
+    public BatchClassifier(String[] args) {
+        for (int argIndex = 0; argIndex < args.length; argIndex++) {
+            String arg = args[argIndex];
+            if (arg.equals("--tree")) {
+                treeFile = new File(getValue(args, ++argIndex, arg));
+            } else if (arg.equals("--schema-tree")) {
+                schemaSelectionFile = new File(getValue(args, ++argIndex, arg));
+            } else if (arg.equals("--threads")) {
+                parallelism = parseInt(getValue(args, ++argIndex, arg), arg);
+            } else if (arg.equals("--beam-width")) {
+                beamWidth = parseInt(getValue(args, ++argIndex, arg), arg);
+            } else if (arg.equals("--beam-depth")) {
+                beamDepth = parseInt(getValue(args, ++argIndex, arg), arg);
+            } else if (arg.equals("--out-of-core")) {
+                outOfCore = true;
+            } else if (arg.equals("--previous-tree")) {
+                previousTreeFile = new File(getValue(args, ++argIndex, arg));
+            } else if (arg.equals("--previous-matrix")) {
+                previousProcessFile = new File(getValue(args, ++argIndex, arg));
+            } else if (arg.equals("--weight")) {
+                addWeight(getValue(args, ++argIndex, arg));
+            } else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            } else if (processFile == null) {
+                processFile = new File(arg);
+            } else {
+                throw new IllegalArgumentException("Unexpected argument " + arg);
+            }
+        }
+
+        if (processFile == null) {
+            throw new IllegalArgumentException("No process file given");
+        }
+        if (treeFile == null && schemaSelectionFile == null) {
+            throw new IllegalArgumentException("No output given, use --tree and/or --schema-tree");
+        }
+        checkFormat(treeFile);
+        checkFormat(schemaSelectionFile);
+        if (beamWidth < 1 || beamDepth < 0) {
+            throw new IllegalArgumentException("--beam-width must be at least 1 and --beam-depth at least 0");
+        }
+        if ((previousTreeFile == null) != (previousProcessFile == null)) {
+            throw new IllegalArgumentException("--previous-tree and --previous-matrix must be given together");
+        }
+        if (previousTreeFile != null && !previousTreeFile.getName().endsWith(".ctgt")) {
+            throw new IllegalArgumentException("--previous-tree must be a binary tree (.ctgt)");
+        }
+    }
+
+    public void run() throws IOException {
+        ClassificationDataset dataset = Classifier.loadDataset(processFile, outOfCore);
+
+        Classifier classifier = new Classifier(processFile, parallelism);
+        classifier.setMetricWeights(metricWeights);
+        classifier.setBeamSearch(beamWidth, beamDepth);
+        classifier.setMetrics(ClassificationMetrics.getGlobal());
+        try {
+            ClassificationNode root;
+            if (previousTreeFile == null) {
+                root = classifier.classify(dataset);
+            } else {
+                RowDiff diff = RowDiff.compare(Classifier.loadDataset(previousProcessFile, outOfCore), dataset);
+                log.info("Reclassifying " + processFile.getName() + " from " + previousTreeFile.getName() + ", "
+                        + diff + " since " + previousProcessFile.getName());
+                root = classifier.reclassify(dataset, new BinaryTreeReader().read(previousTreeFile), diff);
+            }
+
+            if (treeFile != null) {
+                writeTree(classifier, root, treeFile, true);
+            }
+            if (schemaSelectionFile != null) {
+                writeTree(classifier, root, schemaSelectionFile, false);
+            }
+        } finally {
+            classifier.shutdown();
+        }
+
+        log.info("Run summary\n" + ClassificationMetrics.getGlobal().getSummary());
+    }
+
+    private void writeTree(Classifier classifier, ClassificationNode root, File outputFile, boolean classificationTree)
+            throws IOException {
+        String name = outputFile.getName();
+        if (name.endsWith(".json")) {
+            JsonTreeWriter writer = new JsonTreeWriter();
+            writer.setIncludeLeaves(classificationTree);
+            writer.write(root, outputFile);
+        } else if (name.endsWith(".ctgt")) {
+            // the binary tree holds both views
+            new BinaryTreeWriter().write(root, outputFile);
+        } else if (classificationTree) {
+            classifier.writeClassificationTree(root, outputFile);
+        } else {
+            classifier.writeSchemaSelectionTree(root, outputFile);
+        }
+    }
+
+    private static void checkFormat(File outputFile) {
+        if (outputFile == null) {
+            return;
+        }
+        String name = outputFile.getName();
+        if (!(name.endsWith(".xml") || name.endsWith(".xml.gz") || name.endsWith(".json") || name.endsWith(".ctgt"))) {
+            throw new IllegalArgumentException("Can't tell the format of " + name + " from its extension");
+        }
+    }
+
+    private void addWeight(String weight) {
+        int separator = weight.indexOf('=');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Weights are given as <METRIC>=<weight>, not " + weight);
+        }
+        try {
+            MetricType metric = MetricType.valueOf(weight.substring(0, separator).trim().toUpperCase());
+            metricWeights.put(metric, Double.parseDouble(weight.substring(separator + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid weight in " + weight);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown metric in " + weight);
+        }
+    }
+
+    private static String getValue(String[] args, int argIndex, String option) {
+        if (argIndex >= args.length) {
+            throw new IllegalArgumentException(option + " needs a value");
+        }
+        return args[argIndex];
+    }
+
+    private static int parseInt(String value, String option) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(option + " needs a number, not " + value);
+        }
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        BatchClassifier batchClassifier;
+        try {
+            batchClassifier = new BatchClassifier(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+            return;
+        }
+
+        try {
+            batchClassifier.run();
+        } catch (IOException e) {
+            System.err.println("Classification failed: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package org.isatools.classification;
+
+import org.isatools.classification.fitness.FitnessRanking;
+import org.isatools.classification.fitness.FitnessResult;
+import org.isatools.classification.monitor.ClassificationMetrics;
+import org.isatools.classification.monitor.Counter;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Selects the schema for a node by looking ahead, rather than taking the fittest schema straight away. The fittest
+ * width schemas are candidates, and each is scored by its own fitness plus the score of the best candidate for each
+ * of the classifications it would create, down to depth levels below the node. A child's score is weighted by its
+ * share of the node's elements, so a candidate which leaves most elements in a poorly split classification scores
+ * less than one dividing them evenly.
+ * <p/>
+ * The schemas are ranked at every classification holding elements which a candidate creates, and each of the width
+ * fittest there looks a level further down in the same way. With c classifications in a schema, a candidate ranks
+ * the schemas at up to c + c(width c) + ... + c(width c)^(depth - 1) nodes, roughly (width c)^depth / width, so the
+ * cost is bounded but grows quickly with the depth. Candidates are scored concurrently when a pool is given, and the
+ * metric values for the nodes looked at are kept in the run's FitnessCache, so building the subtree of the candidate
+ * finally selected, and looking ahead from the nodes below, doesn't score those nodes again.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+class BeamSearch {
+
+    private final int width;
+    private final int depth;
+    // when null, candidates are scored one after the other on the calling thread
+    private final ForkJoinPool forkJoinPool;
+
+    /**
+     * @param width        - number of candidates considered at each node, at least 1
+     * @param depth        - number of levels looked ahead, 0 to select greedily
+     * @param forkJoinPool - pool to score candidates in, or null to score them serially
+     */
+    BeamSearch(int width, int depth, ForkJoinPool forkJoinPool) {
+        if (width < 1 || depth < 0) {
+            throw new IllegalArgumentException("Beam width must be at least 1 and depth at least 0, not "
+                    + width + " and " + depth);
+        }
+        this.width = width;
+        this.depth = depth;
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    /**
+     * @param context                       - run the node belongs to
+     * @param fitnessRanking                - fitness of the schemas at the node
+     * @param validClassificationSchemas    - schemas which may be selected
+     * @param observedClassificationSchemas - schemas already selected above the node
+     * @param counts                        - counts for the elements at the node
+     * @return the candidate with the best score, or null if no schema has a non zero fitness
+     */
+    ClassificationSchema selectSchema(final ClassificationContext context, FitnessRanking fitnessRanking,
+                                      Set<ClassificationSchema> validClassificationSchemas,
+                                      final Set<ClassificationSchema> observedClassificationSchemas,
+                                      final NodeCounts counts) {
+        List<FitnessResult> candidates = fitnessRanking.getFittest(width, validClassificationSchemas,
+                observedClassificationSchemas);
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        if (candidates.size() == 1 || depth == 0) {
+            return candidates.get(0).getSchema();
+        }
+
+        final Counter lookaheadNodes = context.getMetrics() == null
+                ? null : context.getMetrics().getCounter(ClassificationMetrics.LOOKAHEAD_NODES);
+        double[] scores = new double[candidates.size()];
+
+        if (forkJoinPool == null) {
+            for (int candidate = 0; candidate < candidates.size(); candidate++) {
+                scores[candidate] = score(context, candidates.get(candidate), observedClassificationSchemas,
+                        counts, depth, lookaheadNodes);
+            }
+        } else {
+            final List<ForkJoinTask<Double>> tasks = new ArrayList<ForkJoinTask<Double>>(candidates.size());
+            for (final FitnessResult candidate : candidates) {
+                tasks.add(ForkJoinTask.adapt(new Callable<Double>() {
+                    public Double call() {
+                        return score(context, candidate, observedClassificationSchemas, counts, depth, lookaheadNodes);
+                    }
+                }));
+            }
+
+            if (ForkJoinTask.inForkJoinPool()) {
+                ForkJoinTask.invokeAll(tasks);
+            } else {
+                forkJoinPool.invoke(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        invokeAll(tasks);
+                    }
+                });
+            }
+            for (int candidate = 0; candidate < tasks.size(); candidate++) {
+                scores[candidate] = tasks.get(candidate).join();
+            }
+        }
+
+        // ties go to the fitter candidate, i.e. the one a greedy selection would have made
+        int best = 0;
+        for (int candidate = 1; candidate < scores.length; candidate++) {
+            if (scores[candidate] > scores[best]) {
+                best = candidate;
+            }
+        }
+        return candidates.get(best).getSchema();
+    }
+
+    /**
+     * @return fitness of the candidate plus the best score below each of the classifications it creates, weighted by
+     *         their share of the elements
+     */
+    private double score(ClassificationContext context, FitnessResult candidate,
+                         Set<ClassificationSchema> observedClassificationSchemas, NodeCounts counts, int levels,
+                         Counter lookaheadNodes) {
+        double score = candidate.getFitness();
+        ElementSet elements = counts.getElements();
+        if (levels == 0 || elements.isEmpty()) {
+            return score;
+        }
+
+        Set<ClassificationSchema> observedBelow = new HashSet<ClassificationSchema>(observedClassificationSchemas);
+        observedBelow.add(candidate.getSchema());
+
+        Set<ClassificationSchema> validBelow = new HashSet<ClassificationSchema>();
+        for (ClassificationSchema schema : context.getClassificationSchemaPool()) {
+            if (!observedBelow.contains(schema)) {
+                validBelow.add(schema);
+            }
+        }
+        if (validBelow.isEmpty()) {
+            return score;
+        }
+
+        for (Classification classification : candidate.getSchema().getClassifications().values()) {
+            ElementSet childElements = classification.and(elements);
+            if (childElements.size() > 0) {
+                double share = (double) childElements.size() / elements.size();
+                score += share * bestScore(context, validBelow, observedBelow, counts.deriveChild(childElements),
+                        levels - 1, lookaheadNodes);
+            }
+        }
+        return score;
+    }
+
+    /**
+     * @return score of the best candidate at a node below the one a schema is being selected for, 0 if it can't be
+     *         split
+     */
+    private double bestScore(ClassificationContext context, Set<ClassificationSchema> validClassificationSchemas,
+                             Set<ClassificationSchema> observedClassificationSchemas, NodeCounts counts, int levels,
+                             Counter lookaheadNodes) {
+        if (lookaheadNodes != null) {
+            lookaheadNodes.increment();
+        }
+
+        FitnessRanking fitnessRanking = context.getFitnessCalculator().rankSchemas(validClassificationSchemas, counts);
+
+        double best = 0;
+        for (FitnessResult candidate : fitnessRanking.getFittest(width, validClassificationSchemas, null)) {
+            best = Math.max(best, score(context, candidate, observedClassificationSchemas, counts, levels,
+                    lookaheadNodes));
+        }
+        return best;
+    }
+}
@@ -1,27 +1,165 @@
 package org.isatools.classification;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
+import java.nio.LongBuffer;
 
 public class Classification {
 
-    private Collection<Element> elements;
+    private ElementSet elements;
+
+    // out of core membership bits, e.g. a memory mapped column of a binary matrix. When set, the elements are read
+    // from here each time they are asked for and nothing is held on the heap.
+    private ElementIndex index;
+    private LongBuffer memberWords;
 
     private String name;
+    // dense index of this classification within its ClassificationDataset
+    private int id = -1;
     // need to calculate occurrences, proportions of totals, etc.
 
-    public Classification(String name) {
+    public Classification(String name, ElementIndex index) {
+        this(name, new ElementSet(index));
+    }
+
+    public Classification(String name, ElementSet elements) {
+        this.name = name;
+        this.elements = elements;
+    }
+
+    /**
+     * Classification whose membership bits are kept outside the heap. Its elements can't be changed.
+     *
+     * @param name        - name of the classification
+     * @param index       - ElementIndex the bits refer to
+     * @param memberWords - bitset words, laid out as for ElementSet, read from position 0 to the limit
+     */
+    public Classification(String name, ElementIndex index, LongBuffer memberWords) {
         this.name = name;
-        elements = new ArrayList<Element>();
+        this.index = index;
+        this.memberWords = memberWords;
     }
 
     public void addElement(Element element) {
+        if (memberWords != null) {
+            throw new UnsupportedOperationException("The elements of " + name
+                    + " are held out of core and can't be changed");
+        }
         elements.add(element);
     }
 
-    public Collection<Element> getElements() {
-        return elements;
+    /**
+     * @return elements in the classification, which must not be modified. Out of core classifications read them in to
+     *         a new ElementSet on every call, putting the whole column on the heap, so the word at a time operations
+     *         below should be used instead wherever the column is only intersected with or added to another set.
+     */
+    public ElementSet getElements() {
+        if (memberWords == null) {
+            return elements;
+        }
+        // duplicated so that concurrent readers each have their own position
+        LongBuffer words = memberWords.duplicate();
+        words.rewind();
+        long[] memberBits = new long[words.remaining()];
+        words.get(memberBits);
+        return new ElementSet(index, memberBits);
+    }
+
+    /**
+     * @param wordIndex - index of the 64 bit word
+     * @return the word of the membership bits holding ids (wordIndex * 64) to (wordIndex * 64) + 63, read straight
+     *         from the mapped column when out of core
+     */
+    public long getWord(int wordIndex) {
+        if (memberWords == null) {
+            return elements.getWord(wordIndex);
+        }
+        // absolute reads, which leave the buffer's position alone and so are safe for concurrent readers
+        return wordIndex < memberWords.limit() ? memberWords.get(wordIndex) : 0;
+    }
+
+    /**
+     * @param elements - set to intersect with
+     * @return new ElementSet containing the elements present in both the classification and the set
+     */
+    public ElementSet and(ElementSet elements) {
+        if (memberWords == null) {
+            return this.elements.and(elements);
+        }
+        long[] result = new long[elements.getWordCount()];
+        for (int wordIndex = 0; wordIndex < result.length; wordIndex++) {
+            long elementWord = elements.getWord(wordIndex);
+            if (elementWord != 0) {
+                result[wordIndex] = elementWord & getWord(wordIndex);
+            }
+        }
+        return new ElementSet(elements.getIndex(), result);
+    }
+
+    /**
+     * @param elements - set to intersect with
+     * @return number of the set's elements in the classification
+     */
+    public int andCardinality(ElementSet elements) {
+        if (memberWords == null) {
+            return this.elements.andCardinality(elements);
+        }
+        int count = 0;
+        for (int wordIndex = 0; wordIndex < elements.getWordCount(); wordIndex++) {
+            long elementWord = elements.getWord(wordIndex);
+            if (elementWord != 0) {
+                count += Long.bitCount(elementWord & getWord(wordIndex));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param elements - set to intersect with
+     * @return true if at least one of the set's elements is in the classification, stopping at the first found
+     */
+    public boolean intersects(ElementSet elements) {
+        if (memberWords == null) {
+            return this.elements.intersects(elements);
+        }
+        for (int wordIndex = 0; wordIndex < elements.getWordCount(); wordIndex++) {
+            long elementWord = elements.getWord(wordIndex);
+            if (elementWord != 0 && (elementWord & getWord(wordIndex)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the elements of the classification to the set in place.
+     *
+     * @param elements - set to add to
+     */
+    public void orInto(ElementSet elements) {
+        if (memberWords == null) {
+            elements.orInPlace(this.elements);
+            return;
+        }
+        for (int wordIndex = 0; wordIndex < memberWords.limit(); wordIndex++) {
+            long word = memberWords.get(wordIndex);
+            if (word != 0) {
+                elements.orWord(wordIndex, word);
+            }
+        }
+    }
+
+    /**
+     * @return true if the membership bits are held outside the heap
+     */
+    public boolean isOutOfCore() {
+        return memberWords != null;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    void setId(int id) {
+        this.id = id;
     }
 
     public String getName() {
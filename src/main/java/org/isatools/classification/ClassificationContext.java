@@ -0,0 +1,116 @@
+package org.isatools.classification;
+
+import org.isatools.classification.fitness.FitnessCache;
+import org.isatools.classification.fitness.FitnessCalculator;
+import org.isatools.classification.fitness.MetricType;
+import org.isatools.classification.monitor.ClassificationMetrics;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Everything belonging to a single classification run: the dataset with its element index and aggregates, the
+ * counts for the root of the tree, the schemas which may be selected, and the fitness calculator and cache scoring
+ * them, and the metrics recorded for the run, if any. Each call to Classifier.classify() gets its own context, so any
+ * number of runs can share a JVM (and a Classifier) without seeing each other's state. Only the cache, which holds
+ * unweighted metric values, may be shared between runs over the same dataset.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public class ClassificationContext {
+
+    private final ClassificationDataset dataset;
+    // counts for every classified element, from which the counts at each node of the tree are derived
+    private final NodeCounts rootCounts;
+    private final Set<ClassificationSchema> classificationSchemaPool;
+
+    private final FitnessCalculator fitnessCalculator;
+    private final FitnessCache fitnessCache;
+    // this run only, or null when nothing is recorded
+    private final ClassificationMetrics metrics;
+
+    /**
+     * Context for a run which records no metrics.
+     *
+     * @param dataset           - dataset to classify
+     * @param metricWeights     - weights applied to the fitness metrics
+     * @param forkJoinPool      - pool to score schemas in, or null to score them serially
+     * @param fitnessCache      - cache of metric values for the run, which may be shared with other runs over the
+     *                          same dataset
+     */
+    public ClassificationContext(ClassificationDataset dataset, Map<MetricType, Double> metricWeights,
+                                 ForkJoinPool forkJoinPool, FitnessCache fitnessCache) {
+        this(dataset, metricWeights, forkJoinPool, fitnessCache, null);
+    }
+
+    /**
+     * @param dataset           - dataset to classify
+     * @param metricWeights     - weights applied to the fitness metrics
+     * @param forkJoinPool      - pool to score schemas in, or null to score them serially
+     * @param fitnessCache      - cache of metric values for the run, which may be shared with other runs over the
+     *                          same dataset
+     * @param metrics           - registry for this run alone to record in to, or null to record nothing
+     */
+    public ClassificationContext(ClassificationDataset dataset, Map<MetricType, Double> metricWeights,
+                                 ForkJoinPool forkJoinPool, FitnessCache fitnessCache, ClassificationMetrics metrics) {
+        this.dataset = dataset;
+        this.metrics = metrics;
+
+        classificationSchemaPool = new HashSet<ClassificationSchema>(dataset.getSchemas());
+
+        Set<Classification> allClassifications = new HashSet<Classification>();
+        for (ClassificationSchema schema : classificationSchemaPool) {
+            allClassifications.addAll(schema.getClassifications().values());
+        }
+        rootCounts = new NodeCounts(dataset, Statistics.getElementsInSchemas(dataset.getElementIndex(), allClassifications));
+
+        this.fitnessCache = fitnessCache;
+        fitnessCalculator = new FitnessCalculator(metricWeights, forkJoinPool);
+        fitnessCalculator.setFitnessCache(fitnessCache);
+        fitnessCalculator.setMetrics(metrics);
+    }
+
+    public ClassificationDataset getDataset() {
+        return dataset;
+    }
+
+    public ElementIndex getElementIndex() {
+        return dataset.getElementIndex();
+    }
+
+    public NodeCounts getRootCounts() {
+        return rootCounts;
+    }
+
+    /**
+     * @return schemas which may still be selected below the root, read only
+     */
+    public Set<ClassificationSchema> getClassificationSchemaPool() {
+        return Collections.unmodifiableSet(classificationSchemaPool);
+    }
+
+    /**
+     * Removes the schema selected at the root, which can't be used again anywhere in the tree.
+     */
+    void removeFromPool(ClassificationSchema schema) {
+        classificationSchemaPool.remove(schema);
+    }
+
+    public FitnessCalculator getFitnessCalculator() {
+        return fitnessCalculator;
+    }
+
+    public FitnessCache getFitnessCache() {
+        return fitnessCache;
+    }
+
+    /**
+     * @return counters and timers recorded by this run alone, or null if the run records nothing
+     */
+    public ClassificationMetrics getMetrics() {
+        return metrics;
+    }
+}
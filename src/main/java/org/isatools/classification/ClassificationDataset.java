@@ -0,0 +1,161 @@
+package org.isatools.classification;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The elements and classification schemas loaded from a process matrix. Each Classification is keyed by the column
+ * number it was read from in the source matrix.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public class ClassificationDataset {
+
+    private ElementIndex elementIndex;
+    // sum of the occurrence counts of every element added
+    private long totalOccurrences;
+
+    // column number -> schema owning the classification in that column, kept in column order
+    private Map<Integer, ClassificationSchema> classificationSchemas;
+    private Map<String, ClassificationSchema> schemasByName;
+
+    // indexed by Classification.getId() and ClassificationSchema.getId()
+    private List<Classification> classifications;
+    private List<ClassificationSchema> schemas;
+
+    private MembershipIndex membershipIndex;
+
+    public ClassificationDataset() {
+        elementIndex = new ElementIndex();
+        classificationSchemas = new TreeMap<Integer, ClassificationSchema>();
+        schemasByName = new HashMap<String, ClassificationSchema>();
+        classifications = new ArrayList<Classification>();
+        schemas = new ArrayList<ClassificationSchema>();
+    }
+
+    public Classification addClassification(int columnNumber, String schemaName, String classificationName) {
+        return addClassification(columnNumber, schemaName, new Classification(classificationName, elementIndex));
+    }
+
+    public Classification addClassification(int columnNumber, String schemaName, Classification classification) {
+        if (!schemasByName.containsKey(schemaName)) {
+            ClassificationSchema schema = new ClassificationSchema(schemaName, elementIndex);
+            schema.setId(schemas.size());
+            schemas.add(schema);
+            schemasByName.put(schemaName, schema);
+        }
+
+        ClassificationSchema schema = schemasByName.get(schemaName);
+        schema.addClassification(columnNumber, classification);
+        classificationSchemas.put(columnNumber, schema);
+
+        classification.setId(classifications.size());
+        classifications.add(classification);
+        membershipIndex = null;
+
+        return classification;
+    }
+
+    public Element addElement(String name, int occurrenceCount) {
+        return added(elementIndex.addElement(name, occurrenceCount));
+    }
+
+    /**
+     * As addElement(name, occurrenceCount), for a name already encoded as UTF-8.
+     */
+    public Element addElement(byte[] utf8, int offset, int length, int occurrenceCount) {
+        return added(elementIndex.addElement(utf8, offset, length, occurrenceCount));
+    }
+
+    private Element added(Element element) {
+        totalOccurrences += element.getOccurrenceCount();
+        membershipIndex = null;
+
+        return element;
+    }
+
+    public ElementIndex getElementIndex() {
+        return elementIndex;
+    }
+
+    public int getElementCount() {
+        return elementIndex.size();
+    }
+
+    public long getTotalOccurrences() {
+        return totalOccurrences;
+    }
+
+    /**
+     * @return Map of column number to the ClassificationSchema owning that column, in column order.
+     */
+    public Map<Integer, ClassificationSchema> getClassificationSchemas() {
+        return classificationSchemas;
+    }
+
+    /**
+     * @return the distinct ClassificationSchemas, in the order their first column appears.
+     */
+    public Set<ClassificationSchema> getSchemas() {
+        return new LinkedHashSet<ClassificationSchema>(classificationSchemas.values());
+    }
+
+    /**
+     * @return every Classification, indexed by Classification.getId()
+     */
+    public List<Classification> getClassifications() {
+        return classifications;
+    }
+
+    public int getSchemaCount() {
+        return schemas.size();
+    }
+
+    /**
+     * @return true if any classification's membership bits are held outside the heap
+     */
+    public boolean isOutOfCore() {
+        for (Classification classification : classifications) {
+            if (classification.isOutOfCore()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The per element view of classification membership. It is built on first use, so should only be asked for once
+     * the dataset has been completely loaded. It holds an int for every membership, so out of core datasets don't use
+     * it and are counted from their columns instead.
+     *
+     * @return MembershipIndex for the dataset as it currently stands
+     */
+    public synchronized MembershipIndex getMembershipIndex() {
+        if (membershipIndex == null) {
+            membershipIndex = new MembershipIndex(this);
+        }
+        return membershipIndex;
+    }
+
+    public Classification getClassification(int columnNumber) {
+        return classificationSchemas.get(columnNumber).getClassification(columnNumber);
+    }
+
+    /**
+     * @return ElementSet of every element classified by at least one of the schemas
+     */
+    public ElementSet getClassifiedElements() {
+        Collection<ClassificationSchema> schemas = getSchemas();
+        ElementSet elements = new ElementSet(elementIndex);
+        for (ClassificationSchema schema : schemas) {
+            elements.orInPlace(schema.getElements());
+        }
+        return elements;
+    }
+}
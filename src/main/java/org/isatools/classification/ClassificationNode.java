@@ -0,0 +1,110 @@
+package org.isatools.classification;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A node in the generated classification tree. The tree is built completely in memory by the Classifier and written
+ * out afterwards, so that independent branches can be computed concurrently.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public class ClassificationNode {
+
+    private String name;
+
+    private int elementCount;
+    private double occurrenceCount;
+
+    // schema chosen to sub classify the elements at this node, null when the node could not be classified any further
+    private ClassificationSchema selectedSchema;
+
+    // ids of the elements which are placed directly under this node rather than in one of its children. Held as ids
+    // rather than as a bitset over every element, so that the tree takes space in proportion to its leaves.
+    private ElementIndex leafIndex;
+    private int[] leafIds;
+
+    private List<ClassificationNode> children;
+
+    public ClassificationNode(String name, ElementSet elements) {
+        this.name = name;
+        this.elementCount = elements.size();
+        this.occurrenceCount = Statistics.getOccurrencesForElements(elements);
+        this.children = new ArrayList<ClassificationNode>();
+    }
+
+    public ClassificationNode(String name, NodeCounts counts) {
+        this.name = name;
+        this.elementCount = counts.getElementCount();
+        this.occurrenceCount = counts.getOccurrences();
+        this.children = new ArrayList<ClassificationNode>();
+    }
+
+    /**
+     * @param name            - name of the node
+     * @param elementCount    - number of elements beneath the node
+     * @param occurrenceCount - total occurrences of those elements
+     */
+    public ClassificationNode(String name, int elementCount, double occurrenceCount) {
+        this.name = name;
+        this.elementCount = elementCount;
+        this.occurrenceCount = occurrenceCount;
+        this.children = new ArrayList<ClassificationNode>();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getElementCount() {
+        return elementCount;
+    }
+
+    public double getOccurrenceCount() {
+        return occurrenceCount;
+    }
+
+    public ClassificationSchema getSelectedSchema() {
+        return selectedSchema;
+    }
+
+    public void setSelectedSchema(ClassificationSchema selectedSchema) {
+        this.selectedSchema = selectedSchema;
+    }
+
+    /**
+     * @return a new ElementSet holding the elements placed directly under this node, null if none have been set
+     */
+    public ElementSet getLeafElements() {
+        return leafIds == null ? null : ElementSet.fromIds(leafIndex, leafIds);
+    }
+
+    /**
+     * @return number of elements placed directly under this node
+     */
+    public int getLeafCount() {
+        return leafIds == null ? 0 : leafIds.length;
+    }
+
+    public void setLeafElements(ElementSet leafElements) {
+        if (leafElements == null) {
+            leafIndex = null;
+            leafIds = null;
+        } else {
+            leafIndex = leafElements.getIndex();
+            leafIds = leafElements.toIds();
+        }
+    }
+
+    public List<ClassificationNode> getChildren() {
+        return children;
+    }
+
+    public void addChild(ClassificationNode child) {
+        children.add(child);
+    }
+
+    public String toString() {
+        return name;
+    }
+}
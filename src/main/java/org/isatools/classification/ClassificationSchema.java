@@ -6,11 +6,15 @@ import java.util.Map;
 public class ClassificationSchema {
 
     private String name;
+    private ElementIndex index;
+    // dense index of this schema within its ClassificationDataset
+    private int id = -1;
 
     private Map<Integer, Classification> classifications;
 
-    public ClassificationSchema(String name) {
+    public ClassificationSchema(String name, ElementIndex index) {
         this.name = name;
+        this.index = index;
         classifications = new HashMap<Integer, Classification>();
     }
 
@@ -18,6 +22,14 @@ public class ClassificationSchema {
         classifications.put(index, classification);
     }
 
+    public int getId() {
+        return id;
+    }
+
+    void setId(int id) {
+        this.id = id;
+    }
+
     public String getName() {
         return name;
     }
@@ -30,4 +42,15 @@ public class ClassificationSchema {
         return classifications.get(index);
     }
 
+    /**
+     * @return ElementSet of every element classified by at least one of this schema's classifications
+     */
+    public ElementSet getElements() {
+        ElementSet elements = new ElementSet(index);
+        for (Classification classification : classifications.values()) {
+            classification.orInto(elements);
+        }
+        return elements;
+    }
+
 }
@@ -0,0 +1,224 @@
+package org.isatools.classification;
+
+import org.isatools.classification.fitness.MetricType;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Long running, in-process service which classifies many datasets. Jobs are run by a fixed number of workers with a
+ * bounded queue in front of them, and all share one Classifier (and so one fork join pool for the work within a
+ * job). Datasets loaded from files are kept and reused by later jobs on the same file until it changes or is evicted.
+ * At most a fixed number of datasets are held, the least recently used being evicted once another is loaded.
+ * <p/>
+ * Submitting to a full queue throws a RejectedExecutionException, leaving the caller to decide whether to wait and
+ * retry or to give up.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public class ClassificationService {
+
+    private static final Logger log = Logger.getLogger(ClassificationService.class.getName());
+
+    private static final int DEFAULT_MAXIMUM_DATASETS = 16;
+
+    private final ThreadPoolExecutor executor;
+    private final Classifier classifier;
+
+    // canonical path -> dataset loaded from it, held as a future so that concurrent jobs load a file only once
+    private final ConcurrentMap<String, LoadedDataset> datasets = new ConcurrentHashMap<String, LoadedDataset>();
+    private final int maximumDatasets;
+    // ticks each time a dataset is used, ordering the datasets held from least to most recently used
+    private final AtomicLong uses = new AtomicLong();
+
+    /**
+     * @param workers     - number of jobs run at once
+     * @param queueSize   - number of jobs which may wait for a worker
+     * @param parallelism - threads shared by the running jobs to evaluate schema fitness and subtrees
+     */
+    public ClassificationService(int workers, int queueSize, int parallelism) {
+        this(workers, queueSize, parallelism, DEFAULT_MAXIMUM_DATASETS);
+    }
+
+    /**
+     * @param workers         - number of jobs run at once
+     * @param queueSize       - number of jobs which may wait for a worker
+     * @param parallelism     - threads shared by the running jobs to evaluate schema fitness and subtrees
+     * @param maximumDatasets - number of datasets loaded from files which are held for later jobs
+     */
+    public ClassificationService(int workers, int queueSize, int parallelism, int maximumDatasets) {
+        this.maximumDatasets = maximumDatasets;
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize));
+        classifier = new Classifier(parallelism);
+    }
+
+    /**
+     * Classifies the dataset in the given file with equal metric weights.
+     *
+     * @param processFile - process matrix, either tab separated or in the binary matrix format
+     * @return Future of the root of the classification tree
+     */
+    public Future<ClassificationNode> submit(File processFile) {
+        return submit(processFile, new HashMap<MetricType, Double>());
+    }
+
+    /**
+     * @param processFile   - process matrix, either tab separated or in the binary matrix format
+     * @param metricWeights - weights for the fitness metrics
+     * @return Future of the root of the classification tree. Failure to load the file is reported as the cause of the
+     *         ExecutionException.
+     */
+    public Future<ClassificationNode> submit(final File processFile, final Map<MetricType, Double> metricWeights) {
+        return executor.submit(new Callable<ClassificationNode>() {
+            public ClassificationNode call() throws IOException {
+                return classifier.classify(getDataset(processFile), metricWeights);
+            }
+        });
+    }
+
+    /**
+     * @param dataset       - an already loaded dataset, which must not be modified while the job runs
+     * @param metricWeights - weights for the fitness metrics
+     * @return Future of the root of the classification tree
+     */
+    public Future<ClassificationNode> submit(final ClassificationDataset dataset,
+                                             final Map<MetricType, Double> metricWeights) {
+        return executor.submit(new Callable<ClassificationNode>() {
+            public ClassificationNode call() {
+                return classifier.classify(dataset, metricWeights);
+            }
+        });
+    }
+
+    /**
+     * Returns the dataset held for the file, loading it if the file hasn't been seen or has been modified since.
+     * Loading one more dataset than the maximum held evicts the least recently used of the others.
+     *
+     * @param processFile - process matrix, either tab separated or in the binary matrix format
+     * @return the dataset in the file
+     * @throws IOException if the file can't be read
+     */
+    public ClassificationDataset getDataset(final File processFile) throws IOException {
+        String key = processFile.getCanonicalPath();
+        long lastModified = processFile.lastModified();
+
+        while (true) {
+            LoadedDataset loaded = datasets.get(key);
+            if (loaded == null || loaded.lastModified != lastModified) {
+                LoadedDataset loading = new LoadedDataset(lastModified, new FutureTask<ClassificationDataset>(
+                        new Callable<ClassificationDataset>() {
+                            public ClassificationDataset call() throws IOException {
+                                return Classifier.loadDataset(processFile);
+                            }
+                        }));
+
+                boolean replaced = loaded == null ? datasets.putIfAbsent(key, loading) == null
+                        : datasets.replace(key, loaded, loading);
+                if (!replaced) {
+                    // another job got there first, use whatever it put in
+                    continue;
+                }
+                loaded = loading;
+                loading.dataset.run();
+            }
+
+            try {
+                ClassificationDataset dataset = loaded.dataset.get();
+                loaded.lastUsed = uses.incrementAndGet();
+                if (datasets.size() > maximumDatasets) {
+                    evictLeastRecentlyUsed(key);
+                }
+                return dataset;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while loading " + processFile);
+            } catch (ExecutionException e) {
+                // don't keep the failure, so the file can be loaded once it has been fixed
+                datasets.remove(key, loaded);
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Failed to load " + processFile + ": " + e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Evicts datasets, least recently used first, until no more than the maximum are held. Datasets still loading
+     * are left alone, as are those for the given key.
+     *
+     * @param key - canonical path of the dataset just used
+     */
+    private void evictLeastRecentlyUsed(String key) {
+        while (datasets.size() > maximumDatasets) {
+            Map.Entry<String, LoadedDataset> leastRecentlyUsed = null;
+            for (Map.Entry<String, LoadedDataset> loaded : datasets.entrySet()) {
+                if (!loaded.getKey().equals(key) && loaded.getValue().dataset.isDone()
+                        && (leastRecentlyUsed == null
+                        || loaded.getValue().lastUsed < leastRecentlyUsed.getValue().lastUsed)) {
+                    leastRecentlyUsed = loaded;
+                }
+            }
+            if (leastRecentlyUsed == null) {
+                return;
+            }
+            datasets.remove(leastRecentlyUsed.getKey(), leastRecentlyUsed.getValue());
+        }
+    }
+
+    /**
+     * @param processFile - file whose dataset should no longer be held
+     */
+    public void evictDataset(File processFile) throws IOException {
+        datasets.remove(processFile.getCanonicalPath());
+    }
+
+    public void clearDatasets() {
+        datasets.clear();
+    }
+
+    public int getDatasetCount() {
+        return datasets.size();
+    }
+
+    /**
+     * Stops accepting jobs. Jobs already submitted are completed before the worker threads are released.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.info("Waiting for " + executor.getActiveCount() + " classifications to finish");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            classifier.shutdown();
+        }
+    }
+
+    private static class LoadedDataset {
+        private final long lastModified;
+        private final FutureTask<ClassificationDataset> dataset;
+        private volatile long lastUsed;
+
+        private LoadedDataset(long lastModified, FutureTask<ClassificationDataset> dataset) {
+            this.lastModified = lastModified;
+            this.dataset = dataset;
+        }
+    }
+}
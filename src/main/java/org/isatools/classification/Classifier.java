@@ -1,16 +1,26 @@
 package org.isatools.classification;
 
-import au.com.bytecode.opencsv.CSVReader;
-import org.isatools.classification.fitness.FitnessCalculator;
+import org.isatools.classification.fitness.FitnessCache;
+import org.isatools.classification.fitness.FitnessRanking;
 import org.isatools.classification.fitness.FitnessResult;
 import org.isatools.classification.fitness.MetricType;
-import org.isatools.classification.visualise.ClassificationTreeViewer;
+import org.isatools.classification.io.BinaryMatrixFormat;
+import org.isatools.classification.io.BinaryMatrixLoader;
+import org.isatools.classification.io.DatasetLoader;
+import org.isatools.classification.io.TabularMatrixLoader;
+import org.isatools.classification.monitor.ClassificationMetrics;
+import org.isatools.classification.visualise.ClassificationTreeDisplay;
 import org.isatools.classification.visualise.TreeViewXMLCreator;
 
-import javax.swing.*;
-import java.io.FileReader;
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Created by the ISA team
@@ -22,245 +32,638 @@ import java.util.*;
  */
 public class Classifier {
 
-    private static final String PROCESSES = "processes";
+    private static final Logger log = Logger.getLogger(Classifier.class.getName());
 
-    private Map<String, List<String[]>> fileContents;
+    private static final String PROCESSES = "CleanedData/clean-processes-for-classification.txt";
+    // element sets kept by the fitness cache are limited to 64MB
+    private static final long FITNESS_CACHE_BYTES = 64L * 1024 * 1024;
 
-    private Map<Integer, ClassificationSchema> classificationSchemas;
-    private Set<ClassificationSchema> classificationSchemaPool;
+    private File processFile;
 
-    private FitnessCalculator fitnessCalculator;
+    // dataset loaded by runClassification(). Everything else belonging to a run is kept in its ClassificationContext,
+    // so classify() may be called concurrently.
+    private ClassificationDataset dataset;
+
+    private Map<MetricType, Double> metricWeights = new HashMap<MetricType, Double>();
+    private ForkJoinPool forkJoinPool;
+    // when null, the fittest schema is selected at each node
+    private BeamSearch beamSearch;
+    // when null, nothing is recorded. Otherwise each run records in to a registry of its own, which is added to this
+    // one once the run is done, so threads scoring a run never contend on the totals.
+    private ClassificationMetrics metrics;
 
     private TreeViewXMLCreator treeXMLCreator;
     private TreeViewXMLCreator schemaSelectionXMLCreator;
 
     public Classifier() {
-        this.fileContents = new HashMap<String, List<String[]>>();
-        classificationSchemas = new HashMap<Integer, ClassificationSchema>();
-        classificationSchemaPool = new HashSet<ClassificationSchema>();
+        this(1);
     }
 
-    public void runClassification() {
-        loadFiles();
-        runClassificationAlgorithm();
+    /**
+     * @param parallelism - number of threads used to evaluate schema fitness. 1 runs everything on the calling thread.
+     */
+    public Classifier(int parallelism) {
+        this(new File(PROCESSES), parallelism);
     }
 
-    private void loadFiles() {
-        try {
-            CSVReader processLoader = new CSVReader(new FileReader("CleanedData/clean-processes-for-classification.txt"), '\t');
-            fileContents.put(PROCESSES, processLoader.readAll());
+    /**
+     * @param processFile - process matrix to classify, either tab separated or in the binary matrix format
+     * @param parallelism - number of threads used to evaluate schema fitness. 1 runs everything on the calling thread.
+     */
+    public Classifier(File processFile, int parallelism) {
+        this.processFile = processFile;
+        if (parallelism > 1) {
+            forkJoinPool = new ForkJoinPool(parallelism);
+        }
+    }
 
-            createClassificationDataStructure();
+    /**
+     * @param metricWeights - weight applied to each metric when scoring schemas. Metrics without a weight count once.
+     */
+    public void setMetricWeights(Map<MetricType, Double> metricWeights) {
+        this.metricWeights = metricWeights;
+    }
 
-            classificationSchemaPool.addAll(classificationSchemas.values());
+    /**
+     * @param metrics - registry to total the metrics recorded by every run in, e.g. ClassificationMetrics.getGlobal(),
+     *                or null (the default) to record nothing
+     */
+    public void setMetrics(ClassificationMetrics metrics) {
+        this.metrics = metrics;
+    }
 
-            // this set is used in the fitness calculator
-            Set<Classification> allClassifications = new HashSet<Classification>();
+    /**
+     * Selects the schema at each node by looking ahead rather than greedily taking the fittest, see BeamSearch.
+     *
+     * @param width - number of candidate schemas considered at each node. 1 selects greedily.
+     * @param depth - number of levels looked ahead below each node. 0 selects greedily.
+     * @throws IllegalArgumentException if width is less than 1 or depth less than 0
+     */
+    public void setBeamSearch(int width, int depth) {
+        if (width < 1 || depth < 0) {
+            throw new IllegalArgumentException("Beam width must be at least 1 and depth at least 0, not "
+                    + width + " and " + depth);
+        }
+        // without a lookahead the beam search would only ever select the fittest schema
+        beamSearch = width == 1 || depth == 0 ? null : new BeamSearch(width, depth, forkJoinPool);
+    }
 
-            // pre-populate all the statistics
-            for (ClassificationSchema schema : classificationSchemaPool) {
-                allClassifications.addAll(schema.getClassifications().values());
+    /**
+     * Loads the process file, classifies it and writes the classification and schema selection trees as TreeML in
+     * java.io.tmpdir. Nothing is displayed, see ClassificationTreeDisplay for that.
+     */
+    public void runClassification() {
+        try {
+            loadFiles();
+            if (dataset != null) {
+                runClassificationAlgorithm();
             }
+        } finally {
+            shutdown();
+        }
+    }
 
-            Collection<Element> elements = Statistics.getElementsInSchemas(allClassifications);
+    /**
+     * Releases the threads used for parallel classification. Only needed when classify() is called directly.
+     */
+    public void shutdown() {
+        if (forkJoinPool != null) {
+            forkJoinPool.shutdown();
+        }
+    }
 
-            fitnessCalculator = new FitnessCalculator();
-            fitnessCalculator.calculateFitnessForAllSchemas(classificationSchemaPool, elements);
+    private void loadFiles() {
+        try {
+            dataset = loadDataset(processFile);
+        } catch (IOException e) {
+            log.log(Level.SEVERE, "Unable to load " + processFile.getAbsolutePath(), e);
+        }
+    }
 
-            printFitnessResults();
+    /**
+     * @param processFile - process matrix, either tab separated or in the binary matrix format
+     * @return the loaded dataset
+     * @throws IOException if the file can't be read
+     */
+    public static ClassificationDataset loadDataset(File processFile) throws IOException {
+        return loadDataset(processFile, false);
+    }
 
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * @param processFile - process matrix, either tab separated or in the binary matrix format
+     * @param outOfCore   - true to leave the membership columns in the file rather than loading them on to the heap,
+     *                    see BinaryMatrixLoader. Only binary matrices can be classified out of core.
+     * @return the loaded dataset
+     * @throws IOException if the file can't be read, or is tab separated and outOfCore is true
+     */
+    public static ClassificationDataset loadDataset(File processFile, boolean outOfCore) throws IOException {
+        long start = System.nanoTime();
+
+        boolean binaryMatrix = BinaryMatrixFormat.isBinaryMatrix(processFile);
+        if (outOfCore && !binaryMatrix) {
+            throw new IOException(processFile.getName() + " must be converted with BinaryMatrixWriter to be classified out of core");
         }
+        DatasetLoader loader = binaryMatrix ? new BinaryMatrixLoader(outOfCore) : new TabularMatrixLoader();
+        ClassificationDataset dataset = loader.load(processFile);
+
+        ClassificationMetrics.getGlobal().getTimer(ClassificationMetrics.LOAD).recordSince(start);
+        return dataset;
+    }
+
+    private FitnessRanking calculateInitialFitness(ClassificationContext context) {
+        FitnessRanking fitnessRanking = context.getFitnessCalculator().rankSchemas(
+                context.getClassificationSchemaPool(), context.getRootCounts());
+
+        printFitnessResults(fitnessRanking, null);
+        return fitnessRanking;
     }
 
-    private void printFitnessResults() {
-        for (FitnessResult fitnessResult : fitnessCalculator.getFitnessResults()) {
-            System.out.println(fitnessResult.getSchema().getName() + " -> " + fitnessResult.getFitness()
-                    + " (normalised = " + fitnessResult.getNormalizedFitness() + ")");
+    private void printFitnessResults(FitnessRanking fitnessRanking, ClassificationSchema bestSchema) {
+        // the results are only sorted if they are going to be logged
+        if (!log.isLoggable(Level.FINE)) {
+            return;
         }
+        // logged as one block so output from concurrently classified branches doesn't interleave
+        StringBuilder results = new StringBuilder();
+        for (FitnessResult fitnessResult : fitnessRanking.getResults()) {
+            results.append(fitnessResult.getSchema().getName()).append(" -> ").append(fitnessResult.getFitness())
+                    .append(" (normalised = ").append(fitnessResult.getNormalizedFitness()).append(")\n");
+        }
+        if (bestSchema != null) {
+            results.append("******************************\n");
+            results.append("Next best schema is: ").append(bestSchema.getName()).append('\n');
+            results.append("******************************\n");
+        }
+        log.fine(results.toString());
     }
 
-    private void createClassificationDataStructure() {
-        List<String[]> rows = fileContents.get(PROCESSES);
-        // Start at row 1, first row is just column headers
-        createClassificationCategories(rows.get(0));
+    private void runClassificationAlgorithm() {
+        ClassificationNode root = classify(dataset);
 
-        for (int rowNumber = 1; rowNumber < rows.size(); rowNumber++) {
-            String[] columns = rows.get(rowNumber);
-            String elementName = columns[0];
-            int occurrenceCount = Integer.valueOf(columns[1]);
+        treeXMLCreator = new TreeViewXMLCreator();
+        treeXMLCreator.generateStart("tree");
+        writeClassificationTree(treeXMLCreator, root);
 
-            Element element = new Element(elementName, occurrenceCount);
+        schemaSelectionXMLCreator = new TreeViewXMLCreator();
+        schemaSelectionXMLCreator.generateStart("schema");
+        writeSchemaSelectionTree(schemaSelectionXMLCreator, root);
+    }
 
-            Statistics.numberOfElements++;
-            Statistics.totalOccurrences += element.getOccurrenceCount();
+    /**
+     * @return TreeML file holding the classification tree written by runClassification(), null before it has run
+     */
+    public File getTreeFile() {
+        return treeXMLCreator == null ? null : treeXMLCreator.getTreeFile();
+    }
 
-            for (int columnNumber = 2; columnNumber < columns.length; columnNumber++) {
-                if (columns[columnNumber].equals("1")) {
-                    classificationSchemas.get(columnNumber).getClassification(columnNumber).addElement(element);
-                }
-            }
+    /**
+     * @return TreeML file holding the schema selection tree written by runClassification(), null before it has run
+     */
+    public File getSchemaSelectionFile() {
+        return schemaSelectionXMLCreator == null ? null : schemaSelectionXMLCreator.getTreeFile();
+    }
+
+    /**
+     * Writes the classification tree as TreeML, gzip compressed if the file name ends in .gz
+     *
+     * @param root       - root of a tree built by classify()
+     * @param outputFile - file to write
+     * @throws IOException if the file can't be written
+     */
+    public void writeClassificationTree(ClassificationNode root, File outputFile) throws IOException {
+        TreeViewXMLCreator creator = new TreeViewXMLCreator();
+        creator.generateStart(outputFile);
+        writeClassificationTree(creator, root);
+    }
+
+    /**
+     * Writes the schema selection tree as TreeML, gzip compressed if the file name ends in .gz
+     *
+     * @param root       - root of a tree built by classify()
+     * @param outputFile - file to write
+     * @throws IOException if the file can't be written
+     */
+    public void writeSchemaSelectionTree(ClassificationNode root, File outputFile) throws IOException {
+        TreeViewXMLCreator creator = new TreeViewXMLCreator();
+        creator.generateStart(outputFile);
+        writeSchemaSelectionTree(creator, root);
+    }
+
+    /**
+     * Top point for running the classification. This is the point where the top classification is selected. The tree
+     * is only built in memory, nothing is written out. Safe to call concurrently, each call having its own
+     * ClassificationContext.
+     *
+     * @param dataset - elements and classification schemas to build the tree from
+     * @return root ClassificationNode of the generated tree
+     */
+    public ClassificationNode classify(ClassificationDataset dataset) {
+        return classify(dataset, metricWeights);
+    }
+
+    /**
+     * As classify(dataset), scoring the schemas with the given weights rather than those set on the Classifier.
+     *
+     * @param dataset       - elements and classification schemas to build the tree from
+     * @param metricWeights - weight applied to each metric. Metrics without a weight count once.
+     * @return root ClassificationNode of the generated tree
+     */
+    public ClassificationNode classify(ClassificationDataset dataset, Map<MetricType, Double> metricWeights) {
+        FitnessCache fitnessCache = new FitnessCache(FITNESS_CACHE_BYTES);
+        return classify(createContext(dataset, metricWeights, fitnessCache));
+    }
+
+    /**
+     * Builds one tree for each of the weightings. The unweighted metric values of a schema at a node don't depend on
+     * the weights, so they are calculated once and re-weighted for every tree passing through that node; the further
+     * the trees agree, the less work each extra weighting costs.
+     *
+     * @param dataset    - elements and classification schemas to build the trees from
+     * @param weightings - weights to build a tree with
+     * @return root of the tree built with each weighting, in the same order as the weightings
+     */
+    public List<ClassificationNode> sweepWeights(ClassificationDataset dataset,
+                                                 List<Map<MetricType, Double>> weightings) {
+        return sweepWeights(dataset, weightings, new FitnessCache(FITNESS_CACHE_BYTES));
+    }
+
+    /**
+     * As sweepWeights(dataset, weightings), sharing the unweighted metric values through a cache set up by the
+     * caller, who can then read how often they were reused.
+     *
+     * @param dataset      - elements and classification schemas to build the trees from
+     * @param weightings   - weights to build a tree with
+     * @param fitnessCache - cache shared by the trees
+     * @return root of the tree built with each weighting, in the same order as the weightings
+     */
+    public List<ClassificationNode> sweepWeights(ClassificationDataset dataset,
+                                                 List<Map<MetricType, Double>> weightings,
+                                                 FitnessCache fitnessCache) {
+        List<ClassificationNode> roots = new ArrayList<ClassificationNode>(weightings.size());
+        for (Map<MetricType, Double> weighting : weightings) {
+            roots.add(classify(createContext(dataset, weighting, fitnessCache)));
         }
+        return roots;
     }
 
-    private void createClassificationCategories(String[] topRow) {
+    /**
+     * Builds the tree for a dataset which differs from the one an earlier tree was built from by only some of its
+     * rows, e.g. after a few processes have been added or annotated again. A node none of whose rows differ is given
+     * the schema it had in the earlier tree, as is everything below it, without scoring any schemas. The other nodes
+     * are scored again, and the subtree below a node is only built afresh when the schema selected for it changes.
+     * Apart from schemas tied on fitness, the tree is the one classify(dataset) would build, provided the earlier tree
+     * was built with the same weights and beam search.
+     *
+     * @param dataset      - dataset to classify
+     * @param previousRoot - root of the earlier tree, e.g. as read by BinaryTreeReader
+     * @param diff         - rows differing between the matrix the earlier tree was built from and this one
+     * @return root ClassificationNode of the generated tree
+     */
+    public ClassificationNode reclassify(ClassificationDataset dataset, ClassificationNode previousRoot, RowDiff diff) {
+        FitnessCache fitnessCache = new FitnessCache(FITNESS_CACHE_BYTES);
+        return reclassify(createContext(dataset, metricWeights, fitnessCache), previousRoot, diff);
+    }
 
-        Map<String, ClassificationSchema> tmpClassificationSchemaMap = new HashMap<String, ClassificationSchema>();
+    /**
+     * As reclassify(dataset, previousRoot, diff), for a run set up by the caller.
+     *
+     * @param context      - run to build the tree for
+     * @param previousRoot - root of the earlier tree
+     * @param diff         - rows differing between the matrix the earlier tree was built from and this one
+     * @return root ClassificationNode of the generated tree
+     */
+    public ClassificationNode reclassify(ClassificationContext context, ClassificationNode previousRoot, RowDiff diff) {
+        if (diff.isColumnsChanged()) {
+            log.info("The columns have changed since the earlier tree was built, so it is being built again");
+            return classify(context);
+        }
+        return classify(context, new PreviousTree(previousRoot, diff, context.getDataset()));
+    }
 
-        for (int columnNumber = 2; columnNumber < topRow.length; columnNumber++) {
-            String[] classificationAndName = topRow[columnNumber].split(":");
+    /**
+     * Builds the tree for a run set up by the caller, who can then read the metrics recorded for the run from the
+     * context, if it was given a registry. A summary of them is logged at FINE once the tree is built, and they are
+     * added to the Classifier's registry, if it has one.
+     *
+     * @param context - run to build the tree for
+     * @return root ClassificationNode of the generated tree
+     */
+    public ClassificationNode classify(ClassificationContext context) {
+        return classify(context, null);
+    }
 
-            if (!tmpClassificationSchemaMap.containsKey(classificationAndName[0])) {
-                ClassificationSchema schema = new ClassificationSchema(classificationAndName[0]);
-                tmpClassificationSchemaMap.put(classificationAndName[0], schema);
-            }
+    private ClassificationNode classify(ClassificationContext context, PreviousTree previous) {
+        ClassificationMetrics runMetrics = context.getMetrics();
+        if (runMetrics == null) {
+            return buildTree(context, previous);
+        }
 
-            tmpClassificationSchemaMap.get(classificationAndName[0]).
-                    addClassification(columnNumber,
-                            new Classification(classificationAndName[1]));
+        long start = System.nanoTime();
+        ClassificationNode root = buildTree(context, previous);
+        runMetrics.getTimer(ClassificationMetrics.CLASSIFICATION).recordSince(start);
 
-            classificationSchemas.put(columnNumber, tmpClassificationSchemaMap.get(classificationAndName[0]));
+        if (metrics != null && metrics != runMetrics) {
+            metrics.add(runMetrics);
+        }
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Classified " + context.getDataset().getElementCount() + " elements\n"
+                    + runMetrics.getSummary() + context.getFitnessCache());
         }
+        return root;
     }
 
     /**
-     * Top point for running the classification. This is the point where the top classification is selected.
+     * @return context for a run recording in to a registry of its own if the Classifier has a registry, otherwise
+     *         recording nothing
      */
-    private void runClassificationAlgorithm() {
-        // starting point. We get the top level classification
-        treeXMLCreator = new TreeViewXMLCreator();
-        treeXMLCreator.generateStart("tree");
+    private ClassificationContext createContext(ClassificationDataset dataset, Map<MetricType, Double> metricWeights,
+                                                FitnessCache fitnessCache) {
+        return new ClassificationContext(dataset, metricWeights, forkJoinPool, fitnessCache,
+                metrics == null ? null : new ClassificationMetrics());
+    }
 
-        schemaSelectionXMLCreator = new TreeViewXMLCreator();
-        schemaSelectionXMLCreator.generateStart("schema");
+    /**
+     * @param previous - earlier tree to reuse the unchanged nodes of, or null to build the whole tree
+     */
+    private ClassificationNode buildTree(ClassificationContext context, PreviousTree previous) {
+        ClassificationSchema schema = null;
+        if (previous != null && previous.isRootUnchanged()) {
+            schema = previous.getSelectedSchema(previous.getRoot());
+        }
 
-        ClassificationSchema schema = fitnessCalculator.getFitnessResults().get(0).getSchema();
+        if (schema == null) {
+            // starting point. We get the top level classification
+            FitnessRanking initialRanking = calculateInitialFitness(context);
+            schema = beamSearch == null ? null : beamSearch.selectSchema(context, initialRanking,
+                    context.getClassificationSchemaPool(), new HashSet<ClassificationSchema>(), context.getRootCounts());
+            if (schema == null) {
+                schema = initialRanking.getFittest().getSchema();
+            }
+        } else if (context.getMetrics() != null) {
+            context.getMetrics().getCounter(ClassificationMetrics.REUSED_NODES).increment();
+        }
 
-        classificationSchemaPool.remove(schema);
+        context.removeFromPool(schema);
 
         // we now need to look at each of the sub classifications and select a
         // classification schema which is able to sub classify. This should be based
         // Those classifications are those which contain all of the elements in one of
         // the classifications and not the other.
-        treeXMLCreator.addTo(new Classification("Classification"));
+        ClassificationNode root = new ClassificationNode("Classification", context.getRootCounts());
+        root.setSelectedSchema(schema);
+        if (context.getMetrics() != null) {
+            context.getMetrics().getCounter(ClassificationMetrics.NODES).increment();
+        }
 
-        schemaSelectionXMLCreator.addTo(schema.getName());
+        // the earlier tree's subtrees can only be matched up when the same schema was selected
+        boolean matchChildren = previous != null && previous.isSelectedSchema(previous.getRoot(), schema);
+        Set<ClassificationNode> matchedChildren = new HashSet<ClassificationNode>();
 
+        List<SubClassificationTask> tasks = new ArrayList<SubClassificationTask>();
         for (Classification classification : schema.getClassifications().values()) {
             Set<ClassificationSchema> observedSchemas = new HashSet<ClassificationSchema>();
             observedSchemas.add(schema);
-            runSubClassifications(classification, observedSchemas, classification.getElements());
+            ClassificationNode previousChild = matchChildren
+                    ? previous.findChild(previous.getRoot(), classification, matchedChildren) : null;
+            tasks.add(new SubClassificationTask(context, classification, observedSchemas, context.getRootCounts(),
+                    classification.getElements(), 1, previous, previousChild));
         }
-        treeXMLCreator.closeBranch();
-        treeXMLCreator.closeTree();
 
-        schemaSelectionXMLCreator.closeBranch();
-        schemaSelectionXMLCreator.closeTree();
-        SwingUtilities.invokeLater(new Runnable() {
-            public void run() {
-                printClassificationInformation();
-            }
-        });
+        for (ClassificationNode child : runSubClassifications(tasks)) {
+            root.addChild(child);
+        }
+
+        return root;
     }
 
     /**
      * Performs a recursive operation to further classify each level of the hierarchy
      *
+     * @param context                       - run the classification belongs to
      * @param classification                - Classification to be further classified
      * @param observedClassificationSchemas - ClassificationSchema objects already observed thus far in the classification
-     * @param elementsToClassify            - Elements to be further classified by the algorithm.
+     * @param counts                        - NodeCounts for the elements to be further classified by the algorithm.
+     * @param depth                         - depth of the node in the tree, the root being at 0
+     * @param previous                      - earlier tree being reused, or null
+     * @param previousNode                  - node of the earlier tree for the same classification, or null to build
+     *                                      the whole subtree afresh
+     * @return ClassificationNode holding the subtree built for the classification.
      */
-    private void runSubClassifications(Classification classification, Set<ClassificationSchema> observedClassificationSchemas,
-                                       Collection<Element> elementsToClassify) {
+    private ClassificationNode runSubClassifications(ClassificationContext context, Classification classification,
+                                                     Set<ClassificationSchema> observedClassificationSchemas, NodeCounts counts,
+                                                     int depth, PreviousTree previous, ClassificationNode previousNode) {
+        ElementSet elementsToClassify = counts.getElements();
+        ClassificationMetrics runMetrics = context.getMetrics();
+
+        if (runMetrics != null) {
+            runMetrics.getCounter(ClassificationMetrics.NODES).increment();
+            runMetrics.getGauge(ClassificationMetrics.DEPTH).recordMaximum(depth);
+        }
 
         // locate classification scheme which can be used for the classification
-        treeXMLCreator.addTo(classification, elementsToClassify);
+        ClassificationNode node = new ClassificationNode(classification.getName(), counts);
 
-        Set<ClassificationSchema> validClassificationSchemas = removeAlreadyObservedSchemas(classificationSchemaPool, observedClassificationSchemas);
+        Set<ClassificationSchema> validClassificationSchemas = removeAlreadyObservedSchemas(context.getClassificationSchemaPool(), observedClassificationSchemas);
 
-        fitnessCalculator.calculateFitnessForAllSchemas(validClassificationSchemas, elementsToClassify);
-        printFitnessResults();
+        ClassificationSchema bestSchema = null;
+        if (elementsToClassify.isEmpty() || validClassificationSchemas.isEmpty()) {
+            // nothing to split or nothing to split it with. A single element is still scored, as it may belong to
+            // more than one classification of a schema.
+            if (runMetrics != null) {
+                runMetrics.getCounter(ClassificationMetrics.PRUNED_NODES).increment();
+                runMetrics.getCounter(ClassificationMetrics.PRUNED_SCHEMAS).add(validClassificationSchemas.size());
+            }
+        } else {
+            FitnessRanking fitnessRanking = context.getFitnessCalculator().rankSchemas(validClassificationSchemas, counts);
+
+            // the best schema is selected from looking at the fitness and the currently available classifications
+            bestSchema = beamSearch == null
+                    ? Statistics.selectNextBestSchema(validClassificationSchemas, fitnessRanking, observedClassificationSchemas)
+                    : beamSearch.selectSchema(context, fitnessRanking, validClassificationSchemas, observedClassificationSchemas, counts);
 
-        // the best schema is selected from looking at the fitness and the currently available classifications
-        ClassificationSchema bestSchema = Statistics.selectNextBestSchema(validClassificationSchemas, fitnessCalculator, observedClassificationSchemas);
+            printFitnessResults(fitnessRanking, bestSchema);
+        }
 
         // If we have another classification schema available, it means we are able to sub classify
         if (validClassificationSchemas.size() > 0 && elementsToClassify.size() > 0 && bestSchema != null) {
             // recalculate fitness based on the restricted number of elements now to be classified
+            node.setSelectedSchema(bestSchema);
 
             // add elements which don't fall into next classification into the tree.
-            addElementsToTree(getSetDifference(elementsToClassify, Statistics.getElementsInSchemas(bestSchema.getClassifications().values())));
+            node.setLeafElements(elementsToClassify.andNot(bestSchema.getElements()));
             // we remove classification iteratively
             observedClassificationSchemas.add(bestSchema);
 
+            // the earlier tree's subtrees can only be matched up when the same schema was selected
+            boolean matchChildren = previousNode != null && previous.isSelectedSchema(previousNode, bestSchema);
+            Set<ClassificationNode> matchedChildren = new HashSet<ClassificationNode>();
+
+            List<SubClassificationTask> tasks = new ArrayList<SubClassificationTask>();
             for (Classification classificationCandidate : bestSchema.getClassifications().values()) {
-                Collection<Element> elementsToFurtherClassify = getIntersectionOfSet(classificationCandidate.getElements(), elementsToClassify);
+                ElementSet elementsToFurtherClassify = classificationCandidate.and(elementsToClassify);
                 // we only further classify when there are elements to be classified
                 if (elementsToFurtherClassify.size() > 0) {
-                    schemaSelectionXMLCreator.addTo(bestSchema.getName() + " e=" + elementsToClassify.size() + " u=" + Statistics.getOccurrencesForElements(elementsToClassify));
-                    System.out.println("******************************");
-                    System.out.println("Next best schema is: " + bestSchema.getName());
-                    System.out.println("******************************\n");
-                    runSubClassifications(classificationCandidate, createCopyOfSet(observedClassificationSchemas), getIntersectionOfSet(classificationCandidate.getElements(), elementsToClassify));
-                    schemaSelectionXMLCreator.closeBranch();
-
+                    ClassificationNode previousChild = matchChildren
+                            ? previous.findChild(previousNode, classificationCandidate, matchedChildren) : null;
+                    tasks.add(new SubClassificationTask(context, classificationCandidate, createCopyOfSet(observedClassificationSchemas), counts, elementsToFurtherClassify, depth + 1, previous, previousChild));
                 }
             }
 
+            for (ClassificationNode child : runSubClassifications(tasks)) {
+                node.addChild(child);
+            }
+
         } else {
             // we cannot classify any more, so are finished
-            addElementsToTree(elementsToClassify);
+            node.setLeafElements(elementsToClassify);
         }
 
-        treeXMLCreator.closeBranch();
+        return node;
     }
 
-    private void addElementsToTree(Collection<Element> elementsToClassify) {
-        for (Element element : elementsToClassify) {
-            treeXMLCreator.addTo(element);
+    /**
+     * Builds the subtree for a classification whose node holds the same rows as the matching node of an earlier tree,
+     * giving each node the schema it had then rather than scoring any schemas.
+     *
+     * @param context                       - run the classification belongs to
+     * @param classification                - Classification to be further classified
+     * @param observedClassificationSchemas - ClassificationSchema objects already observed thus far in the classification
+     * @param elementsToClassify            - elements to be further classified
+     * @param depth                         - depth of the node in the tree, the root being at 0
+     * @param previous                      - earlier tree being reused
+     * @param previousNode                  - node of the earlier tree for the same classification
+     * @return ClassificationNode holding the subtree built for the classification.
+     */
+    private ClassificationNode reuseSubClassifications(ClassificationContext context, Classification classification,
+                                                       Set<ClassificationSchema> observedClassificationSchemas,
+                                                       ElementSet elementsToClassify, int depth, PreviousTree previous,
+                                                       ClassificationNode previousNode) {
+        ClassificationMetrics runMetrics = context.getMetrics();
+        if (runMetrics != null) {
+            runMetrics.getCounter(ClassificationMetrics.NODES).increment();
+            runMetrics.getCounter(ClassificationMetrics.REUSED_NODES).increment();
+            runMetrics.getGauge(ClassificationMetrics.DEPTH).recordMaximum(depth);
         }
-    }
 
+        ClassificationNode node = new ClassificationNode(classification.getName(), elementsToClassify);
 
-    private Set<ClassificationSchema> createCopyOfSet(Set<ClassificationSchema> toCopy) {
-        Set<ClassificationSchema> copied = new HashSet<ClassificationSchema>();
-        copied.addAll(toCopy);
-        return copied;
-    }
+        ClassificationSchema schema = previous.getSelectedSchema(previousNode);
+        if (schema == null) {
+            node.setLeafElements(elementsToClassify);
+            return node;
+        }
 
-    private Collection<Element> getIntersectionOfSet(Collection<Element> set1, Collection<Element> set2) {
-        Collection<Element> intersection = new HashSet<Element>();
-        for (Element element : set1) {
-            if (set2.contains(element)) {
-                intersection.add(element);
+        node.setSelectedSchema(schema);
+        node.setLeafElements(elementsToClassify.andNot(schema.getElements()));
+        observedClassificationSchemas.add(schema);
+
+        Set<ClassificationNode> matchedChildren = new HashSet<ClassificationNode>();
+        for (Classification classificationCandidate : schema.getClassifications().values()) {
+            ElementSet elementsToFurtherClassify = classificationCandidate.and(elementsToClassify);
+            if (elementsToFurtherClassify.size() > 0) {
+                ClassificationNode previousChild = previous.findChild(previousNode, classificationCandidate,
+                        matchedChildren);
+                if (previousChild != null && previous.isUnchanged(previousChild, elementsToFurtherClassify)) {
+                    node.addChild(reuseSubClassifications(context, classificationCandidate,
+                            createCopyOfSet(observedClassificationSchemas), elementsToFurtherClassify, depth + 1,
+                            previous, previousChild));
+                } else {
+                    // only when the earlier tree wasn't built from the earlier matrix
+                    node.addChild(runSubClassifications(context, classificationCandidate,
+                            createCopyOfSet(observedClassificationSchemas),
+                            new NodeCounts(context.getDataset(), elementsToFurtherClassify), depth + 1, null, null));
+                }
             }
         }
-        return intersection;
+        return node;
     }
 
-    private Collection<Element> getSetDifference(Collection<Element> set1, Collection<Element> set2) {
-        Collection<Element> difference = new HashSet<Element>();
-        for (Element element : set1) {
-            if (!set2.contains(element)) {
-                difference.add(element);
+    /**
+     * Builds the subtree for each of the sibling classifications. Siblings share no mutable state, so when a pool is
+     * available they are built concurrently.
+     *
+     * @param tasks - sibling subtrees to build
+     * @return the subtrees, in the same order as the tasks.
+     */
+    private List<ClassificationNode> runSubClassifications(final List<SubClassificationTask> tasks) {
+        List<ClassificationNode> nodes = new ArrayList<ClassificationNode>(tasks.size());
+
+        if (forkJoinPool == null || tasks.size() < 2) {
+            for (SubClassificationTask task : tasks) {
+                nodes.add(task.compute());
             }
+            return nodes;
+        }
+
+        if (ForkJoinTask.inForkJoinPool()) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            forkJoinPool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
         }
-        return difference;
+
+        for (SubClassificationTask task : tasks) {
+            nodes.add(task.join());
+        }
+        return nodes;
+    }
+
+    private void writeClassificationTree(TreeViewXMLCreator creator, ClassificationNode root) {
+        long start = System.nanoTime();
+
+        creator.addTo(root.getName());
+        for (ClassificationNode child : root.getChildren()) {
+            writeClassificationNode(creator, child);
+        }
+        creator.closeBranch();
+        creator.closeTree();
+
+        ClassificationMetrics.getGlobal().getTimer(ClassificationMetrics.XML_OUTPUT).recordSince(start);
     }
 
-    private void printClassificationInformation() {
-        JFrame tree = new JFrame("Taxonomy Hierarchy");
-        ClassificationTreeViewer viewerClassification = new ClassificationTreeViewer();
-        tree.add(viewerClassification.createTreeView(treeXMLCreator.getTreeFile().getAbsolutePath()));
-        tree.pack();
-        tree.setVisible(true);
+    private void writeClassificationNode(TreeViewXMLCreator creator, ClassificationNode node) {
+        creator.addTo(node);
+
+        for (Element element : node.getLeafElements()) {
+            creator.addTo(element);
+        }
+        for (ClassificationNode child : node.getChildren()) {
+            writeClassificationNode(creator, child);
+        }
 
-        JFrame schemaSelection = new JFrame("Classification Schemas");
-        ClassificationTreeViewer schemaSelectionViewer = new ClassificationTreeViewer(2);
-        schemaSelection.add(schemaSelectionViewer.createTreeView(schemaSelectionXMLCreator.getTreeFile().getAbsolutePath()));
-        schemaSelection.pack();
-        schemaSelection.setVisible(true);
+        creator.closeBranch();
+    }
+
+    private void writeSchemaSelectionTree(TreeViewXMLCreator creator, ClassificationNode root) {
+        long start = System.nanoTime();
+
+        creator.addTo(root.getSelectedSchema().getName());
+        for (ClassificationNode child : root.getChildren()) {
+            writeSchemaSelectionNode(creator, child);
+        }
+        creator.closeBranch();
+        creator.closeTree();
+
+        ClassificationMetrics.getGlobal().getTimer(ClassificationMetrics.XML_OUTPUT).recordSince(start);
+    }
+
+    private void writeSchemaSelectionNode(TreeViewXMLCreator creator, ClassificationNode node) {
+        for (ClassificationNode child : node.getChildren()) {
+            creator.addTo(node.getSelectedSchema().getName() + " e=" + node.getElementCount() + " u=" + node.getOccurrenceCount());
+            writeSchemaSelectionNode(creator, child);
+            creator.closeBranch();
+        }
+    }
+
+
+    private Set<ClassificationSchema> createCopyOfSet(Set<ClassificationSchema> toCopy) {
+        Set<ClassificationSchema> copied = new HashSet<ClassificationSchema>();
+        copied.addAll(toCopy);
+        return copied;
     }
 
 
@@ -276,9 +679,56 @@ public class Classifier {
         return cleanedResult;
     }
 
+    /**
+     * Builds the subtree for one classification. Each task has its own copy of the observed schemas, and derives the
+     * counts for its elements from those of the parent node. When reclassifying, a task whose node of the earlier tree
+     * holds the same rows reuses it without needing any counts.
+     */
+    private class SubClassificationTask extends RecursiveTask<ClassificationNode> {
+
+        private static final long serialVersionUID = 1L;
+
+        private ClassificationContext context;
+        private Classification classification;
+        private Set<ClassificationSchema> observedClassificationSchemas;
+        private NodeCounts parentCounts;
+        private ElementSet elementsToClassify;
+        private int depth;
+        // null unless reclassifying from a matching node of an earlier tree
+        private PreviousTree previous;
+        private ClassificationNode previousNode;
+
+        private SubClassificationTask(ClassificationContext context, Classification classification,
+                                      Set<ClassificationSchema> observedClassificationSchemas, NodeCounts parentCounts,
+                                      ElementSet elementsToClassify, int depth, PreviousTree previous,
+                                      ClassificationNode previousNode) {
+            this.context = context;
+            this.classification = classification;
+            this.observedClassificationSchemas = observedClassificationSchemas;
+            this.parentCounts = parentCounts;
+            this.elementsToClassify = elementsToClassify;
+            this.depth = depth;
+            this.previous = previous;
+            this.previousNode = previousNode;
+        }
+
+        @Override
+        protected ClassificationNode compute() {
+            if (previousNode != null && previous.isUnchanged(previousNode, elementsToClassify)) {
+                return reuseSubClassifications(context, classification, observedClassificationSchemas,
+                        elementsToClassify, depth, previous, previousNode);
+            }
+            return runSubClassifications(context, classification, observedClassificationSchemas,
+                    parentCounts.deriveChild(elementsToClassify), depth, previous, previousNode);
+        }
+    }
+
+    /**
+     * Classifies the process file given as the first argument, or the default one, and displays the trees. Use
+     * BatchClassifier to run without a display.
+     */
     public static void main(String[] args) {
-        Classifier classifier = new Classifier();
-        classifier.runClassification();
+        ClassificationTreeDisplay.main(args);
     }
 
 
@@ -1,20 +1,41 @@
 package org.isatools.classification;
 
+/**
+ * An element of an ElementIndex. Elements are stored in the index's columns, so an Element is only a view of its id,
+ * and two Elements with the same id in the same index are equal.
+ */
 public class Element {
 
-    private String name;
-    private int occurrenceCount;
+    private ElementIndex index;
+    private int id;
 
-    public Element(String name, int occurrenceCount) {
-        this.name = name;
-        this.occurrenceCount = occurrenceCount;
+    Element(ElementIndex index, int id) {
+        this.index = index;
+        this.id = id;
+    }
+
+    /**
+     * @return dense index of this element, assigned in load order by the ElementIndex it belongs to.
+     */
+    public int getId() {
+        return id;
     }
 
     public String getName() {
-        return name;
+        return index.getName(id);
     }
 
     public int getOccurrenceCount() {
-        return occurrenceCount;
+        return index.getOccurrenceCount(id);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Element && ((Element) other).index == index && ((Element) other).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+        return id;
     }
 }
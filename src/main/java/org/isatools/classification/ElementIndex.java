@@ -0,0 +1,198 @@
+package org.isatools.classification;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Assigns each loaded element a dense integer id so that sets of elements can be held as bitsets (see ElementSet), and
+ * stores the elements themselves in columns indexed by that id rather than as an object per element:
+ * <ul>
+ * <li>a dictionary of the distinct element names, held as UTF-8 bytes with the offset of each name, so that a name
+ * shared by many elements is stored once</li>
+ * <li>the dictionary id of each element's name</li>
+ * <li>the occurrence count of each element</li>
+ * </ul>
+ * Element objects are only light views of an id, created when they are asked for.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public class ElementIndex {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int EMPTY = -1;
+
+    private int size;
+    private int[] nameIds;
+    private int[] occurrenceCounts;
+
+    // name dictionary: name n is nameBytes[nameOffsets[n]] to nameBytes[nameOffsets[n + 1] - 1]
+    private int nameCount;
+    private byte[] nameBytes;
+    private int[] nameOffsets;
+    // open addressing hash table of dictionary ids, EMPTY where unused, kept at most half full
+    private int[] nameTable;
+
+    public ElementIndex() {
+        nameIds = new int[64];
+        occurrenceCounts = new int[64];
+
+        nameBytes = new byte[1024];
+        nameOffsets = new int[65];
+        nameTable = new int[128];
+        Arrays.fill(nameTable, EMPTY);
+    }
+
+    public Element addElement(String name, int occurrenceCount) {
+        byte[] utf8 = name.getBytes(UTF8);
+        return addElement(utf8, 0, utf8.length, occurrenceCount);
+    }
+
+    /**
+     * Adds an element whose name is already UTF-8 encoded, e.g. in a binary matrix, without decoding it.
+     *
+     * @param utf8            - buffer holding the name
+     * @param offset          - start of the name in the buffer
+     * @param length          - number of bytes in the name
+     * @param occurrenceCount - occurrence count of the element
+     * @return the new Element
+     */
+    public Element addElement(byte[] utf8, int offset, int length, int occurrenceCount) {
+        if (size == nameIds.length) {
+            nameIds = Arrays.copyOf(nameIds, size * 2);
+            occurrenceCounts = Arrays.copyOf(occurrenceCounts, size * 2);
+        }
+        nameIds[size] = internName(utf8, offset, length);
+        occurrenceCounts[size] = occurrenceCount;
+
+        return new Element(this, size++);
+    }
+
+    public Element getElement(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("No element with id " + id);
+        }
+        return new Element(this, id);
+    }
+
+    public String getName(int id) {
+        int nameId = nameIds[id];
+        return new String(nameBytes, nameOffsets[nameId], nameOffsets[nameId + 1] - nameOffsets[nameId], UTF8);
+    }
+
+    /**
+     * @return number of distinct element names
+     */
+    public int getNameCount() {
+        return nameCount;
+    }
+
+    public int getOccurrenceCount(int id) {
+        return occurrenceCounts[id];
+    }
+
+    /**
+     * @param wordIndex - index of a bitset word over this index's element ids
+     * @param word      - the bits of that word
+     * @return total occurrence count of the elements whose bits are set in the word
+     */
+    public long sumOccurrences(int wordIndex, long word) {
+        long occurrences = 0;
+        int base = wordIndex << 6;
+        while (word != 0) {
+            occurrences += occurrenceCounts[base + Long.numberOfTrailingZeros(word)];
+            word &= word - 1;
+        }
+        return occurrences;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return ElementSet containing every element registered so far.
+     */
+    public ElementSet getAllElements() {
+        long[] words = new long[(size + 63) >>> 6];
+        for (int wordIndex = 0; wordIndex < size >>> 6; wordIndex++) {
+            words[wordIndex] = -1L;
+        }
+        if ((size & 63) != 0) {
+            words[size >>> 6] = (1L << size) - 1;
+        }
+        return new ElementSet(this, words);
+    }
+
+    /**
+     * @return dictionary id of the name, adding it to the dictionary if it isn't there already
+     */
+    private int internName(byte[] utf8, int offset, int length) {
+        int hash = hash(utf8, offset, length);
+        int mask = nameTable.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int nameId = nameTable[slot];
+            if (nameId == EMPTY) {
+                nameId = addName(utf8, offset, length);
+                nameTable[slot] = nameId;
+                if (nameCount * 2 > nameTable.length) {
+                    rehash();
+                }
+                return nameId;
+            }
+            if (sameName(nameId, utf8, offset, length)) {
+                return nameId;
+            }
+        }
+    }
+
+    private int addName(byte[] utf8, int offset, int length) {
+        int start = nameOffsets[nameCount];
+        if (start + length > nameBytes.length) {
+            nameBytes = Arrays.copyOf(nameBytes, Math.max(start + length, nameBytes.length * 2));
+        }
+        System.arraycopy(utf8, offset, nameBytes, start, length);
+
+        if (nameCount + 2 > nameOffsets.length) {
+            nameOffsets = Arrays.copyOf(nameOffsets, nameOffsets.length * 2);
+        }
+        nameOffsets[nameCount + 1] = start + length;
+        return nameCount++;
+    }
+
+    private boolean sameName(int nameId, byte[] utf8, int offset, int length) {
+        int start = nameOffsets[nameId];
+        if (nameOffsets[nameId + 1] - start != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (nameBytes[start + i] != utf8[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        int[] table = new int[nameTable.length * 2];
+        Arrays.fill(table, EMPTY);
+        int mask = table.length - 1;
+        for (int nameId = 0; nameId < nameCount; nameId++) {
+            int start = nameOffsets[nameId];
+            int slot = hash(nameBytes, start, nameOffsets[nameId + 1] - start) & mask;
+            while (table[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = nameId;
+        }
+        nameTable = table;
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        // spread the bits, as only the low ones pick the slot
+        return hash ^ (hash >>> 16);
+    }
+}
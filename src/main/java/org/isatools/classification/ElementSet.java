@@ -0,0 +1,365 @@
+package org.isatools.classification;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of Elements held as a bitset over the element ids of an ElementIndex. Membership tests are O(1) and
+ * intersection, difference and counting work a 64 bit word at a time.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public class ElementSet extends AbstractCollection<Element> {
+
+    private ElementIndex index;
+    private long[] words;
+
+    // cached cardinality, -1 when it needs to be recounted
+    private int size;
+    // cached fingerprint, only valid when fingerprinted is true. The flag is volatile so that a set shared between
+    // threads can't be seen as fingerprinted before the fingerprint itself.
+    private long fingerprint;
+    private volatile boolean fingerprinted;
+
+    public ElementSet(ElementIndex index) {
+        this(index, new long[wordsFor(index.size())]);
+    }
+
+    /**
+     * @param index - ElementIndex the bits refer to
+     * @param words - bitset words, bit i of word w being the element with id (w * 64) + i. Used directly, not copied.
+     */
+    public ElementSet(ElementIndex index, long[] words) {
+        this.index = index;
+        this.words = words;
+        this.size = -1;
+    }
+
+    public ElementIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    public boolean add(Element element) {
+        int wordIndex = element.getId() >>> 6;
+        ensureCapacity(wordIndex + 1);
+
+        long mask = 1L << element.getId();
+        if ((words[wordIndex] & mask) != 0) {
+            return false;
+        }
+        words[wordIndex] |= mask;
+        if (size >= 0) size++;
+        fingerprinted = false;
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        if (!(object instanceof Element)) {
+            return false;
+        }
+        int id = ((Element) object).getId();
+        int wordIndex = id >>> 6;
+        return wordIndex < words.length && (words[wordIndex] & (1L << id)) != 0;
+    }
+
+    @Override
+    public int size() {
+        if (size < 0) {
+            int count = 0;
+            for (long word : words) {
+                count += Long.bitCount(word);
+            }
+            size = count;
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public Iterator<Element> iterator() {
+        return new Iterator<Element>() {
+            private int next = nextSetBit(0);
+
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            public Element next() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                Element element = index.getElement(next);
+                next = nextSetBit(next + 1);
+                return element;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("ElementSet iterators are read only");
+            }
+        };
+    }
+
+    /**
+     * @param wordIndex - index of the 64 bit word
+     * @return the word of the bitset holding ids (wordIndex * 64) to (wordIndex * 64) + 63
+     */
+    public long getWord(int wordIndex) {
+        return wordIndex < words.length ? words[wordIndex] : 0;
+    }
+
+    /**
+     * @return number of 64 bit words held, beyond which every word is 0
+     */
+    public int getWordCount() {
+        return words.length;
+    }
+
+    /**
+     * @param fromId - first id to inspect
+     * @return the id of the next member at or after fromId, or -1 if there is none.
+     */
+    public int nextSetBit(int fromId) {
+        int wordIndex = fromId >>> 6;
+        if (wordIndex >= words.length) {
+            return -1;
+        }
+        long word = words[wordIndex] & (-1L << fromId);
+        while (true) {
+            if (word != 0) {
+                return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++wordIndex == words.length) {
+                return -1;
+            }
+            word = words[wordIndex];
+        }
+    }
+
+    /**
+     * @param other - set to intersect with
+     * @return new ElementSet containing the elements present in both sets
+     */
+    public ElementSet and(ElementSet other) {
+        int length = Math.min(words.length, other.words.length);
+        long[] result = new long[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = words[i] & other.words[i];
+        }
+        return new ElementSet(index, result);
+    }
+
+    /**
+     * @param other - set of elements to remove
+     * @return new ElementSet containing the elements of this set which are not in other
+     */
+    public ElementSet andNot(ElementSet other) {
+        long[] result = words.clone();
+        int length = Math.min(words.length, other.words.length);
+        for (int i = 0; i < length; i++) {
+            result[i] &= ~other.words[i];
+        }
+        return new ElementSet(index, result);
+    }
+
+    /**
+     * @param other - set to combine with
+     * @return new ElementSet containing the elements present in either set
+     */
+    public ElementSet or(ElementSet other) {
+        long[] result = Arrays.copyOf(words, Math.max(words.length, other.words.length));
+        for (int i = 0; i < other.words.length; i++) {
+            result[i] |= other.words[i];
+        }
+        return new ElementSet(index, result);
+    }
+
+    /**
+     * Adds all the members of other to this set in place.
+     *
+     * @param other - set to merge in
+     */
+    public void orInPlace(ElementSet other) {
+        ensureCapacity(other.words.length);
+        for (int i = 0; i < other.words.length; i++) {
+            words[i] |= other.words[i];
+        }
+        size = -1;
+        fingerprinted = false;
+    }
+
+    /**
+     * Adds the members in one word of another bitset to this set in place.
+     *
+     * @param wordIndex - index of the 64 bit word
+     * @param word      - bits to set in that word
+     */
+    void orWord(int wordIndex, long word) {
+        ensureCapacity(wordIndex + 1);
+        words[wordIndex] |= word;
+        size = -1;
+        fingerprinted = false;
+    }
+
+    /**
+     * Counts the intersection without materialising it.
+     *
+     * @param other - set to intersect with
+     * @return number of elements present in both sets
+     */
+    public int andCardinality(ElementSet other) {
+        int length = Math.min(words.length, other.words.length);
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            count += Long.bitCount(words[i] & other.words[i]);
+        }
+        return count;
+    }
+
+    /**
+     * @param other - set to intersect with
+     * @return true if at least one element is present in both sets, stopping at the first found
+     */
+    public boolean intersects(ElementSet other) {
+        int length = Math.min(words.length, other.words.length);
+        for (int i = 0; i < length; i++) {
+            if ((words[i] & other.words[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sums the occurrence counts of the intersection without materialising it.
+     *
+     * @param other - set to intersect with
+     * @return total occurrence count of the elements present in both sets
+     */
+    public long andOccurrences(ElementSet other) {
+        int length = Math.min(words.length, other.words.length);
+        long occurrences = 0;
+        for (int i = 0; i < length; i++) {
+            occurrences += sumOccurrences(i, words[i] & other.words[i]);
+        }
+        return occurrences;
+    }
+
+    /**
+     * @return total occurrence count of all the elements in this set
+     */
+    public long getOccurrences() {
+        long occurrences = 0;
+        for (int i = 0; i < words.length; i++) {
+            occurrences += sumOccurrences(i, words[i]);
+        }
+        return occurrences;
+    }
+
+    /**
+     * @param other - candidate subset
+     * @return true if every element of other is also in this set
+     */
+    public boolean containsAll(ElementSet other) {
+        for (int i = 0; i < other.words.length; i++) {
+            long word = i < words.length ? words[i] : 0;
+            if ((other.words[i] & ~word) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A 64 bit hash of the members, equal for any two sets holding the same elements.
+     *
+     * @return fingerprint of the set's contents
+     */
+    public long fingerprint() {
+        if (!fingerprinted) {
+            long hash = 0;
+            for (int i = 0; i < words.length; i++) {
+                if (words[i] != 0) {
+                    hash = hash * 0x9E3779B97F4A7C15L + (words[i] ^ (i * 0xC2B2AE3D27D4EB4FL));
+                }
+            }
+            hash ^= hash >>> 33;
+            hash *= 0xFF51AFD7ED558CCDL;
+            hash ^= hash >>> 33;
+
+            fingerprint = hash;
+            fingerprinted = true;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * @param other - set to compare with
+     * @return true if both sets hold exactly the same elements
+     */
+    public boolean sameElements(ElementSet other) {
+        int length = Math.max(words.length, other.words.length);
+        for (int i = 0; i < length; i++) {
+            if (getWord(i) != other.getWord(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return ids of the members, in ascending order
+     */
+    public int[] toIds() {
+        int[] ids = new int[size()];
+        int position = 0;
+        for (int id = nextSetBit(0); id >= 0; id = nextSetBit(id + 1)) {
+            ids[position++] = id;
+        }
+        return ids;
+    }
+
+    /**
+     * @param index - ElementIndex the ids refer to
+     * @param ids   - element ids, in any order
+     * @return ElementSet holding the elements, with only as many words as the largest id needs
+     */
+    public static ElementSet fromIds(ElementIndex index, int[] ids) {
+        int maxId = -1;
+        for (int id : ids) {
+            maxId = Math.max(maxId, id);
+        }
+        long[] words = new long[wordsFor(maxId + 1)];
+        for (int id : ids) {
+            words[id >>> 6] |= 1L << id;
+        }
+        return new ElementSet(index, words);
+    }
+
+    public ElementSet copy() {
+        ElementSet copy = new ElementSet(index, words.clone());
+        copy.size = size;
+        return copy;
+    }
+
+    private long sumOccurrences(int wordIndex, long word) {
+        return index.sumOccurrences(wordIndex, word);
+    }
+
+    private void ensureCapacity(int wordCount) {
+        if (wordCount > words.length) {
+            words = Arrays.copyOf(words, Math.max(wordCount, words.length * 2));
+        }
+    }
+
+    private static int wordsFor(int elementCount) {
+        return (elementCount + 63) >>> 6;
+    }
+}
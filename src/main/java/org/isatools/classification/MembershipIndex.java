@@ -0,0 +1,77 @@
+package org.isatools.classification;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The classifications each element belongs to, held in compressed rows: the classification ids of element e are
+ * classificationIds[offsets[e]] to classificationIds[offsets[e + 1] - 1]. This is the transpose of the per
+ * Classification bitsets, and lets counts for a set of elements be gathered in a single pass over those elements.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public class MembershipIndex {
+
+    private int[] offsets;
+    private int[] classificationIds;
+
+    // classification id -> id of the schema it belongs to
+    private int[] schemaIds;
+    private int schemaCount;
+
+    public MembershipIndex(ClassificationDataset dataset) {
+        int elementCount = dataset.getElementIndex().size();
+        List<Classification> classifications = dataset.getClassifications();
+
+        offsets = new int[elementCount + 1];
+        for (Classification classification : classifications) {
+            ElementSet members = classification.getElements();
+            for (int elementId = members.nextSetBit(0); elementId >= 0; elementId = members.nextSetBit(elementId + 1)) {
+                offsets[elementId + 1]++;
+            }
+        }
+        for (int elementId = 0; elementId < elementCount; elementId++) {
+            offsets[elementId + 1] += offsets[elementId];
+        }
+
+        classificationIds = new int[offsets[elementCount]];
+        int[] nextPosition = new int[elementCount];
+        System.arraycopy(offsets, 0, nextPosition, 0, elementCount);
+        for (Classification classification : classifications) {
+            ElementSet members = classification.getElements();
+            for (int elementId = members.nextSetBit(0); elementId >= 0; elementId = members.nextSetBit(elementId + 1)) {
+                classificationIds[nextPosition[elementId]++] = classification.getId();
+            }
+        }
+
+        schemaIds = new int[classifications.size()];
+        for (Map.Entry<Integer, ClassificationSchema> column : dataset.getClassificationSchemas().entrySet()) {
+            schemaIds[column.getValue().getClassification(column.getKey()).getId()] = column.getValue().getId();
+        }
+        schemaCount = dataset.getSchemaCount();
+    }
+
+    public int getStart(int elementId) {
+        return offsets[elementId];
+    }
+
+    public int getEnd(int elementId) {
+        return offsets[elementId + 1];
+    }
+
+    public int getClassificationId(int position) {
+        return classificationIds[position];
+    }
+
+    public int getSchemaId(int classificationId) {
+        return schemaIds[classificationId];
+    }
+
+    public int getClassificationCount() {
+        return schemaIds.length;
+    }
+
+    public int getSchemaCount() {
+        return schemaCount;
+    }
+}
@@ -0,0 +1,200 @@
+package org.isatools.classification;
+
+import java.util.Arrays;
+
+/**
+ * Per classification and per schema counts for the elements at one node of the classification tree: how many of the
+ * node's elements each classification holds, the sum of their occurrences, and how many distinct elements each schema
+ * covers. A child's counts are derived from its parent's, either by counting the child's elements or by taking away
+ * the elements the child doesn't have, whichever touches fewer elements. The cost of a node is then bounded by its
+ * own size rather than that of the whole dataset.
+ * <p/>
+ * Datasets held on the heap are counted an element at a time through their MembershipIndex. Out of core datasets
+ * would need a MembershipIndex bigger than their mapped columns, so are counted a word at a time from the columns
+ * instead, reading only the words holding the elements being counted.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public class NodeCounts {
+
+    // set for datasets held on the heap
+    private MembershipIndex memberships;
+    // set for out of core datasets instead: schema id -> its classifications
+    private Classification[][] schemaClassifications;
+    private ElementSet elements;
+
+    private long occurrences;
+
+    private int[] classificationCounts;
+    private long[] classificationOccurrences;
+    private int[] schemaCoverage;
+    private long[] schemaCoverageOccurrences;
+
+    public NodeCounts(ClassificationDataset dataset, ElementSet elements) {
+        this(dataset.getClassifications().size(), dataset.getSchemaCount(), elements);
+        if (dataset.isOutOfCore()) {
+            schemaClassifications = getSchemaClassifications(dataset);
+        } else {
+            memberships = dataset.getMembershipIndex();
+        }
+        accumulate(elements, 1);
+    }
+
+    private NodeCounts(int classificationCount, int schemaCount, ElementSet elements) {
+        this.elements = elements;
+
+        classificationCounts = new int[classificationCount];
+        classificationOccurrences = new long[classificationCount];
+        schemaCoverage = new int[schemaCount];
+        schemaCoverageOccurrences = new long[schemaCount];
+    }
+
+    private NodeCounts(NodeCounts parent, ElementSet elements) {
+        this.memberships = parent.memberships;
+        this.schemaClassifications = parent.schemaClassifications;
+        this.elements = elements;
+        this.occurrences = parent.occurrences;
+
+        classificationCounts = parent.classificationCounts.clone();
+        classificationOccurrences = parent.classificationOccurrences.clone();
+        schemaCoverage = parent.schemaCoverage.clone();
+        schemaCoverageOccurrences = parent.schemaCoverageOccurrences.clone();
+    }
+
+    /**
+     * @param childElements - elements of the child node, which must all be elements of this node
+     * @return NodeCounts for the child
+     */
+    public NodeCounts deriveChild(ElementSet childElements) {
+        int childSize = childElements.size();
+
+        if (childSize <= elements.size() - childSize) {
+            NodeCounts child = new NodeCounts(classificationCounts.length, schemaCoverage.length, childElements);
+            child.memberships = memberships;
+            child.schemaClassifications = schemaClassifications;
+            child.accumulate(childElements, 1);
+            return child;
+        }
+
+        NodeCounts child = new NodeCounts(this, childElements);
+        child.accumulate(elements.andNot(childElements), -1);
+        return child;
+    }
+
+    private static Classification[][] getSchemaClassifications(ClassificationDataset dataset) {
+        Classification[][] schemaClassifications = new Classification[dataset.getSchemaCount()][];
+        for (ClassificationSchema schema : dataset.getSchemas()) {
+            schemaClassifications[schema.getId()] = schema.getClassifications().values().toArray(
+                    new Classification[schema.getClassifications().size()]);
+        }
+        return schemaClassifications;
+    }
+
+    private void accumulate(ElementSet toCount, int sign) {
+        if (memberships == null) {
+            accumulateFromColumns(toCount, sign);
+            return;
+        }
+        ElementIndex elementIndex = toCount.getIndex();
+
+        // the last element counted against each schema, so an element in two classifications of a schema only
+        // counts once towards the schema's coverage
+        int[] lastElementForSchema = new int[schemaCoverage.length];
+        Arrays.fill(lastElementForSchema, -1);
+
+        for (int elementId = toCount.nextSetBit(0); elementId >= 0; elementId = toCount.nextSetBit(elementId + 1)) {
+            long elementOccurrences = sign * (long) elementIndex.getOccurrenceCount(elementId);
+            occurrences += elementOccurrences;
+
+            for (int position = memberships.getStart(elementId); position < memberships.getEnd(elementId); position++) {
+                int classificationId = memberships.getClassificationId(position);
+                classificationCounts[classificationId] += sign;
+                classificationOccurrences[classificationId] += elementOccurrences;
+
+                int schemaId = memberships.getSchemaId(classificationId);
+                if (lastElementForSchema[schemaId] != elementId) {
+                    lastElementForSchema[schemaId] = elementId;
+                    schemaCoverage[schemaId] += sign;
+                    schemaCoverageOccurrences[schemaId] += elementOccurrences;
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts the elements a 64 bit word at a time against the words of every classification, skipping words holding
+     * none of the elements. An element's bit is set in the coverage word of a schema at most once, however many of
+     * the schema's classifications hold it.
+     */
+    private void accumulateFromColumns(ElementSet toCount, int sign) {
+        ElementIndex elementIndex = toCount.getIndex();
+
+        for (int wordIndex = 0; wordIndex < toCount.getWordCount(); wordIndex++) {
+            long elementWord = toCount.getWord(wordIndex);
+            if (elementWord == 0) {
+                continue;
+            }
+            occurrences += sign * elementIndex.sumOccurrences(wordIndex, elementWord);
+
+            for (int schemaId = 0; schemaId < schemaClassifications.length; schemaId++) {
+                long covered = 0;
+                for (Classification classification : schemaClassifications[schemaId]) {
+                    long word = classification.getWord(wordIndex) & elementWord;
+                    if (word != 0) {
+                        classificationCounts[classification.getId()] += sign * Long.bitCount(word);
+                        classificationOccurrences[classification.getId()] +=
+                                sign * elementIndex.sumOccurrences(wordIndex, word);
+                        covered |= word;
+                    }
+                }
+                if (covered != 0) {
+                    schemaCoverage[schemaId] += sign * Long.bitCount(covered);
+                    schemaCoverageOccurrences[schemaId] += sign * elementIndex.sumOccurrences(wordIndex, covered);
+                }
+            }
+        }
+    }
+
+    public ElementSet getElements() {
+        return elements;
+    }
+
+    public int getElementCount() {
+        return elements.size();
+    }
+
+    /**
+     * @return total occurrences of the elements at this node
+     */
+    public long getOccurrences() {
+        return occurrences;
+    }
+
+    /**
+     * @return number of this node's elements in the classification
+     */
+    public int getCount(Classification classification) {
+        return classificationCounts[classification.getId()];
+    }
+
+    /**
+     * @return total occurrences of this node's elements in the classification
+     */
+    public long getOccurrences(Classification classification) {
+        return classificationOccurrences[classification.getId()];
+    }
+
+    /**
+     * @return number of this node's elements in at least one of the schema's classifications
+     */
+    public int getCoveredCount(ClassificationSchema schema) {
+        return schemaCoverage[schema.getId()];
+    }
+
+    /**
+     * @return total occurrences of this node's elements in at least one of the schema's classifications
+     */
+    public long getCoveredOccurrences(ClassificationSchema schema) {
+        return schemaCoverageOccurrences[schema.getId()];
+    }
+}
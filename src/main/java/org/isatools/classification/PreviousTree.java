@@ -0,0 +1,129 @@
+package org.isatools.classification;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A tree built by an earlier run, e.g. read back with BinaryTreeReader, matched against the dataset being classified
+ * now. The fitness of a schema at a node depends on nothing but the rows of the node's elements, so a node none of
+ * whose rows were added, removed or changed would be given the same schema as before, as would every node below it.
+ * Classifier.reclassify() reuses those nodes as they were and only scores the rest again.
+ * <p/>
+ * The earlier tree's nodes only have to carry names, counts, selected schema names and leaf elements, so the rows
+ * are matched to it by name.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+class PreviousTree {
+
+    private final ClassificationNode root;
+    private final boolean unchanged;
+
+    // nodes of the earlier tree with a removed or changed row somewhere beneath them
+    private final Set<ClassificationNode> changedNodes = new HashSet<ClassificationNode>();
+    // elements of the dataset in added or changed rows
+    private final ElementSet changedElements;
+    private final Map<String, ClassificationSchema> schemasByName = new HashMap<String, ClassificationSchema>();
+
+    /**
+     * @param root    - root of the earlier tree
+     * @param diff    - rows which differ between the earlier matrix and the dataset, whose columns must be the
+     *                same
+     * @param dataset - dataset being classified
+     */
+    PreviousTree(ClassificationNode root, RowDiff diff, ClassificationDataset dataset) {
+        if (diff.isColumnsChanged()) {
+            throw new IllegalArgumentException("The earlier tree can't be reused once the columns have changed");
+        }
+        this.root = root;
+        this.unchanged = diff.isEmpty();
+
+        findChangedNodes(root, diff);
+        changedElements = diff.getElements(dataset.getElementIndex());
+        for (ClassificationSchema schema : dataset.getSchemas()) {
+            schemasByName.put(schema.getName(), schema);
+        }
+    }
+
+    /**
+     * @return true if a removed or changed row is beneath the node
+     */
+    private boolean findChangedNodes(ClassificationNode node, RowDiff diff) {
+        boolean changed = false;
+        ElementSet leafElements = node.getLeafElements();
+        if (leafElements != null) {
+            for (Element element : leafElements) {
+                if (diff.contains(element.getName())) {
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        for (ClassificationNode child : node.getChildren()) {
+            // every child is visited, so that the changes in each are recorded
+            changed |= findChangedNodes(child, diff);
+        }
+        if (changed) {
+            changedNodes.add(node);
+        }
+        return changed;
+    }
+
+    ClassificationNode getRoot() {
+        return root;
+    }
+
+    /**
+     * @return true if no rows differ, so the schema selected at the root is unchanged
+     */
+    boolean isRootUnchanged() {
+        return unchanged;
+    }
+
+    /**
+     * @param previousNode - node of the earlier tree
+     * @param elements     - elements at the matching node of the tree being built
+     * @return true if the node holds the same rows as it did in the earlier tree, so its subtree can be reused
+     */
+    boolean isUnchanged(ClassificationNode previousNode, ElementSet elements) {
+        // the count and schema are checks against a tree which wasn't built from the earlier matrix at all
+        return !changedNodes.contains(previousNode) && !elements.intersects(changedElements)
+                && previousNode.getElementCount() == elements.size()
+                && (previousNode.getSelectedSchema() == null || getSelectedSchema(previousNode) != null);
+    }
+
+    /**
+     * @return the dataset's schema with the name of the one selected at the node of the earlier tree, null if none
+     *         was selected there or the dataset has no schema of that name
+     */
+    ClassificationSchema getSelectedSchema(ClassificationNode previousNode) {
+        return previousNode.getSelectedSchema() == null
+                ? null : schemasByName.get(previousNode.getSelectedSchema().getName());
+    }
+
+    /**
+     * @return true if the schema has the name of the one selected at the node of the earlier tree
+     */
+    boolean isSelectedSchema(ClassificationNode previousNode, ClassificationSchema schema) {
+        return schema != null && previousNode.getSelectedSchema() != null
+                && previousNode.getSelectedSchema().getName().equals(schema.getName());
+    }
+
+    /**
+     * @param previousNode   - node of the earlier tree
+     * @param classification - classification a child is being built for
+     * @param matched        - children already matched to a classification, added to when a child is found
+     * @return the first child of the node not yet matched which has the classification's name, or null
+     */
+    ClassificationNode findChild(ClassificationNode previousNode, Classification classification,
+                                 Set<ClassificationNode> matched) {
+        for (ClassificationNode child : previousNode.getChildren()) {
+            if (child.getName().equals(classification.getName()) && matched.add(child)) {
+                return child;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,254 @@
+package org.isatools.classification;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The rows of a process matrix which were added, removed or changed since an earlier version of it, identified by
+ * process name. A name held by several rows is changed if any of its rows is, so every row with that name counts as
+ * changed. Classifier.reclassify() uses the diff to find the nodes of the earlier tree which need to be scored again.
+ * <p/>
+ * Changes to the columns (a schema or classification added, removed or moved) can't be followed row by row and
+ * mean the whole tree is built again.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public class RowDiff {
+
+    private Set<String> addedRows = new HashSet<String>();
+    private Set<String> removedRows = new HashSet<String>();
+    private Set<String> changedRows = new HashSet<String>();
+    private boolean columnsChanged;
+
+    /**
+     * Compares two versions of a matrix. Rows are compared on their occurrence count and the columns of the
+     * classifications they belong to.
+     *
+     * @param previous - matrix the earlier tree was built from
+     * @param current  - matrix to classify now
+     * @return rows differing between the two
+     */
+    public static RowDiff compare(ClassificationDataset previous, ClassificationDataset current) {
+        RowDiff diff = new RowDiff();
+
+        if (!getColumns(previous).equals(getColumns(current))) {
+            diff.setColumnsChanged(true);
+            return diff;
+        }
+
+        Rows previousRows = new Rows(previous);
+        Rows currentRows = new Rows(current);
+
+        for (Map.Entry<String, Integer> name : currentRows.firstRows.entrySet()) {
+            Integer previousRow = previousRows.firstRows.get(name.getKey());
+            if (previousRow == null) {
+                diff.addAddedRow(name.getKey());
+            } else if (!sameRows(previousRows, previousRow, currentRows, name.getValue())) {
+                diff.addChangedRow(name.getKey());
+            }
+        }
+        for (String name : previousRows.firstRows.keySet()) {
+            if (!currentRows.firstRows.containsKey(name)) {
+                diff.addRemovedRow(name);
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * @return schema and classification name of each column, keyed by column number
+     */
+    private static Map<Integer, String> getColumns(ClassificationDataset dataset) {
+        Map<Integer, String> columns = new HashMap<Integer, String>();
+        for (Map.Entry<Integer, ClassificationSchema> column : dataset.getClassificationSchemas().entrySet()) {
+            columns.put(column.getKey(), column.getValue().getName() + ":"
+                    + column.getValue().getClassification(column.getKey()).getName());
+        }
+        return columns;
+    }
+
+    /**
+     * @return true if the rows sharing a name are the same in both matrices, whatever order they are in
+     */
+    private static boolean sameRows(Rows previousRows, int previousRow, Rows currentRows, int currentRow) {
+        // almost every name has a single row, which is compared without sorting anything
+        if (previousRows.nextRows[previousRow] == Rows.NONE && currentRows.nextRows[currentRow] == Rows.NONE) {
+            return Arrays.equals(previousRows.getRow(previousRow), currentRows.getRow(currentRow));
+        }
+
+        List<int[]> previousValues = previousRows.getRowsWithName(previousRow);
+        List<int[]> currentValues = currentRows.getRowsWithName(currentRow);
+        if (previousValues.size() != currentValues.size()) {
+            return false;
+        }
+        for (int row = 0; row < previousValues.size(); row++) {
+            if (!Arrays.equals(previousValues.get(row), currentValues.get(row))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void addAddedRow(String name) {
+        addedRows.add(name);
+    }
+
+    public void addRemovedRow(String name) {
+        removedRows.add(name);
+    }
+
+    public void addChangedRow(String name) {
+        changedRows.add(name);
+    }
+
+    public Set<String> getAddedRows() {
+        return addedRows;
+    }
+
+    public Set<String> getRemovedRows() {
+        return removedRows;
+    }
+
+    public Set<String> getChangedRows() {
+        return changedRows;
+    }
+
+    public boolean isColumnsChanged() {
+        return columnsChanged;
+    }
+
+    public void setColumnsChanged(boolean columnsChanged) {
+        this.columnsChanged = columnsChanged;
+    }
+
+    /**
+     * @return true if the name is that of an added, removed or changed row
+     */
+    public boolean contains(String name) {
+        return addedRows.contains(name) || removedRows.contains(name) || changedRows.contains(name);
+    }
+
+    /**
+     * @return true if no rows or columns differ
+     */
+    public boolean isEmpty() {
+        return !columnsChanged && addedRows.isEmpty() && removedRows.isEmpty() && changedRows.isEmpty();
+    }
+
+    /**
+     * @param elementIndex - index of the current matrix
+     * @return the elements of the current matrix whose rows were added or changed
+     */
+    public ElementSet getElements(ElementIndex elementIndex) {
+        ElementSet elements = new ElementSet(elementIndex);
+        if (addedRows.isEmpty() && removedRows.isEmpty() && changedRows.isEmpty()) {
+            return elements;
+        }
+        for (int elementId = 0; elementId < elementIndex.size(); elementId++) {
+            if (contains(elementIndex.getName(elementId))) {
+                elements.add(elementIndex.getElement(elementId));
+            }
+        }
+        return elements;
+    }
+
+    public String toString() {
+        return columnsChanged ? "columns changed" : addedRows.size() + " rows added, " + removedRows.size()
+                + " removed and " + changedRows.size() + " changed";
+    }
+
+    /**
+     * The rows of a matrix grouped by process name, each row's values being its occurrence count followed by the
+     * numbers of the columns it has a classification in, in ascending order.
+     */
+    private static class Rows {
+
+        private static final int NONE = -1;
+
+        private static final Comparator<int[]> ROW_ORDER = new Comparator<int[]>() {
+            public int compare(int[] row, int[] otherRow) {
+                for (int value = 0; value < Math.min(row.length, otherRow.length); value++) {
+                    if (row[value] != otherRow[value]) {
+                        return row[value] < otherRow[value] ? -1 : 1;
+                    }
+                }
+                return row.length - otherRow.length;
+            }
+        };
+
+        private ElementIndex elementIndex;
+        // null for out of core datasets, whose rows are read from the classifications' columns instead
+        private MembershipIndex memberships;
+        private List<Classification> classifications;
+        // classification id -> number of its column
+        private int[] columnNumbers;
+
+        // process name -> first element with it, each element then linking to the next with the same name
+        private Map<String, Integer> firstRows = new HashMap<String, Integer>();
+        private int[] nextRows;
+
+        private Rows(ClassificationDataset dataset) {
+            elementIndex = dataset.getElementIndex();
+            memberships = dataset.isOutOfCore() ? null : dataset.getMembershipIndex();
+            classifications = dataset.getClassifications();
+
+            columnNumbers = new int[dataset.getClassifications().size()];
+            for (Map.Entry<Integer, ClassificationSchema> column : dataset.getClassificationSchemas().entrySet()) {
+                columnNumbers[column.getValue().getClassification(column.getKey()).getId()] = column.getKey();
+            }
+
+            nextRows = new int[elementIndex.size()];
+            // added last first, so each name's elements are linked in load order
+            for (int elementId = elementIndex.size() - 1; elementId >= 0; elementId--) {
+                Integer nextRow = firstRows.put(elementIndex.getName(elementId), elementId);
+                nextRows[elementId] = nextRow == null ? NONE : nextRow;
+            }
+        }
+
+        private int[] getRow(int elementId) {
+            if (memberships == null) {
+                return getRowFromColumns(elementId);
+            }
+            int[] row = new int[1 + memberships.getEnd(elementId) - memberships.getStart(elementId)];
+            row[0] = elementIndex.getOccurrenceCount(elementId);
+            int value = 1;
+            for (int position = memberships.getStart(elementId); position < memberships.getEnd(elementId); position++) {
+                row[value++] = columnNumbers[memberships.getClassificationId(position)];
+            }
+            Arrays.sort(row, 1, row.length);
+            return row;
+        }
+
+        private int[] getRowFromColumns(int elementId) {
+            int[] row = new int[1 + classifications.size()];
+            row[0] = elementIndex.getOccurrenceCount(elementId);
+            int value = 1;
+            for (Classification classification : classifications) {
+                if ((classification.getWord(elementId >>> 6) & (1L << elementId)) != 0) {
+                    row[value++] = columnNumbers[classification.getId()];
+                }
+            }
+            Arrays.sort(row, 1, value);
+            return Arrays.copyOf(row, value);
+        }
+
+        /**
+         * @return values of every row with the same name as the first, in a fixed order
+         */
+        private List<int[]> getRowsWithName(int firstRow) {
+            List<int[]> rows = new ArrayList<int[]>();
+            for (int elementId = firstRow; elementId != NONE; elementId = nextRows[elementId]) {
+                rows.add(getRow(elementId));
+            }
+            Collections.sort(rows, ROW_ORDER);
+            return rows;
+        }
+    }
+}
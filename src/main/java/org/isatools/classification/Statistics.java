@@ -1,79 +1,95 @@
 package org.isatools.classification;
 
-import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.math.MathException;
-import org.apache.commons.math.distribution.NormalDistribution;
-import org.apache.commons.math.distribution.NormalDistributionImpl;
-import org.apache.commons.math.stat.descriptive.moment.Mean;
-import org.apache.commons.math.stat.descriptive.moment.StandardDeviation;
-import org.apache.commons.math.stat.inference.ChiSquareTest;
-import org.apache.commons.math.stat.inference.ChiSquareTestImpl;
+import org.apache.commons.math.special.Erf;
+import org.apache.commons.math.special.Gamma;
 import org.isatools.classification.fitness.FitnessCalculator;
+import org.isatools.classification.fitness.FitnessRanking;
 import org.isatools.classification.fitness.FitnessResult;
+import org.isatools.classification.fitness.SchemaProfile;
 
 import java.util.*;
+import java.util.logging.Logger;
 
 public class Statistics {
 
-    public static int numberOfElements = 0;
-    public static int totalOccurrences = 0;
+    private static final Logger log = Logger.getLogger(Statistics.class.getName());
 
-    public static double getOccurrencesWithinClassificationSchema(ClassificationSchema schema, Collection<Element> toBeClassified) {
-        int totalClassificationCoverage = 0;
-        for (Classification classification : schema.getClassifications().values()) {
-            for (Element element : classification.getElements()) {
-                if (toBeClassified.contains(element)) {
-                    totalClassificationCoverage += element.getOccurrenceCount();
-                }
-            }
-        }
-        return totalClassificationCoverage;
+    public static double getOccurrencesWithinClassificationSchema(ClassificationSchema schema, ElementSet toBeClassified) {
+        return new SchemaProfile(schema, toBeClassified).getTotalClassificationOccurrences();
     }
 
-    public static double calculateChiTestScore(ClassificationSchema classificationSchema, Collection<Element> elements) throws MathException {
-
-
-        List<Double> observedValues = new ArrayList<Double>();
+    public static double calculateChiTestScore(ClassificationSchema classificationSchema, ElementSet elements) throws MathException {
+        double[] values = new double[classificationSchema.getClassifications().size()];
+        int length = 0;
 
         for (Classification classification : classificationSchema.getClassifications().values()) {
-            double occurrenceForClassification = 0;
-            for (Element classificationElement : classification.getElements()) {
-                if (elements.contains(classificationElement)) {
-                    occurrenceForClassification++;
-                }
-            }
+            int occurrenceForClassification = classification.andCardinality(elements);
             // we don't add zero occurrences since they are not allowed in the ChiTest
             if (occurrenceForClassification > 0) {
-                observedValues.add(occurrenceForClassification);
+                values[length++] = occurrenceForClassification;
             }
         }
 
-        double[] values = ArrayUtils.toPrimitive(observedValues.toArray(new Double[observedValues.size()]));
-
-        return calculateChiTestScore(values);
+        return calculateChiTestScore(values, length);
     }
 
     public static double calculateChiTestScore(double[] values) throws MathException {
-        Mean mean = new Mean();
-        long meanResult = (long) mean.evaluate(values);
+        return calculateChiTestScore(values, values.length);
+    }
+
+    /**
+     * Chi-square test of the first length values against their mean (truncated to a whole count), the same test as
+     * commons-math's ChiSquareTestImpl.chiSquareTest(values, expected) without building the expected counts.
+     *
+     * @return square root of the p value, 1 for a single value
+     * @throws IllegalArgumentException if a value isn't positive
+     */
+    private static double calculateChiTestScore(double[] values, int length) throws MathException {
+        long meanResult = (long) mean(values, length);
 
-        long[] expectedValues = new long[values.length];
-        for (int observedIndex = 0; observedIndex < values.length; observedIndex++) {
-            expectedValues[observedIndex] = meanResult;
+        if (length == 1) return 1;
+
+        if (length < 2) {
+            throw new IllegalArgumentException("At least 2 values are needed for a chi-square test, not " + length);
         }
 
-        if (values.length == 1) return 1;
+        double sumValues = 0;
+        for (int index = 0; index < length; index++) {
+            if (values[index] <= 0) {
+                throw new IllegalArgumentException("Chi-square test values must be positive, not " + values[index]);
+            }
+            sumValues += values[index];
+        }
+        double sumMeans = 0;
+        for (int index = 0; index < length; index++) {
+            sumMeans += meanResult;
+        }
+
+        // as in commons-math, the expected counts are rescaled when they don't total the same as the values
+        double ratio = 1;
+        boolean rescale = Math.abs(sumValues - sumMeans) > 1.0E-5;
+        if (rescale) {
+            ratio = sumMeans / sumValues;
+        }
+        double chiSquare = 0;
+        for (int index = 0; index < length; index++) {
+            if (rescale) {
+                double deviation = meanResult - ratio * values[index];
+                chiSquare += deviation * deviation / (ratio * values[index]);
+            } else {
+                double deviation = meanResult - values[index];
+                chiSquare += deviation * deviation / values[index];
+            }
+        }
 
-        ChiSquareTest chiSquareTest = new ChiSquareTestImpl();
-        return Math.sqrt(chiSquareTest.chiSquareTest(values, expectedValues));
+        // upper tail of the chi-square distribution with length - 1 degrees of freedom
+        double cumulativeProbability = chiSquare <= 0 ? 0 : Gamma.regularizedGammaP((length - 1.0) / 2.0, chiSquare / 2.0);
+        return Math.sqrt(1.0 - cumulativeProbability);
     }
 
-    public static double getOccurrencesForElements(Collection<Element> elements) {
-        double occurrences = 0;
-        for (Element element : elements) {
-            occurrences += element.getOccurrenceCount();
-        }
-        return occurrences;
+    public static double getOccurrencesForElements(ElementSet elements) {
+        return elements.getOccurrences();
     }
 
     /**
@@ -83,112 +99,148 @@ public class Statistics {
      * @param elements             - elements to be further classified
      * @return double value between 0 and 1 indicating how well the data stays around the mean.
      */
-    public static double calculateNormalDistributionScore(ClassificationSchema classificationSchema, Collection<Element> elements) {
-        List<Double> observedValues = new ArrayList<Double>();
-        for (Classification classification : classificationSchema.getClassifications().values()) {
-            double occurrenceForClassification = 0;
-            for (Element classificationElement : classification.getElements()) {
-                if (elements.contains(classificationElement)) {
-                    occurrenceForClassification++;
-                }
-            }
-            // we don't add zero occurrences since they are not allowed in the ChiTest
-            observedValues.add(occurrenceForClassification);
-        }
+    public static double calculateNormalDistributionScore(ClassificationSchema classificationSchema, ElementSet elements) {
+        return calculateNormalDistributionScore(new SchemaProfile(classificationSchema, elements));
+    }
 
-        double[] values = ArrayUtils.toPrimitive(observedValues.toArray(new Double[observedValues.size()]));
-        return calculateNormalDistributionScore(values);
+    /**
+     * @param profile - how the schema divides up the elements to be further classified
+     * @return double value between 0 and 1 indicating how well the number of elements in each classification stays
+     *         around the mean.
+     */
+    public static double calculateNormalDistributionScore(SchemaProfile profile) {
+        return calculateNormalDistributionScore(profile.getClassificationCounts());
     }
 
     public static double calculateNormalDistributionScore(double[] values) {
-        Mean mean = new Mean();
-        double meanValue = mean.evaluate(values);
-        double stdDev = calculateStandardDeviation(values);
+        double meanValue = mean(values, values.length);
+        double stdDev = Math.sqrt(variance(values, values.length, meanValue));
         if (stdDev < 0.000001) {
             return 1;
         } else {
-            NormalDistribution distribution = new NormalDistributionImpl(meanValue, stdDev);
             try {
                 // we are calculating the probability that the value falls within +-1 of the mean value.
                 // This is normally calculated on the std deviation, however, since that changes per test, calculating on a
                 // constant value 1 is better for getting a normalised value.
-                return distribution.cumulativeProbability(meanValue - 1, meanValue + 1);
+                return normalCumulativeProbability(meanValue + 1, meanValue, stdDev)
+                        - normalCumulativeProbability(meanValue - 1, meanValue, stdDev);
             } catch (MathException e) {
                 return 0;
             }
         }
     }
 
-
     public static double calculateStandardDeviation(double[] values) {
-        StandardDeviation dev = new StandardDeviation();
-        return dev.evaluate(values);
+        return Math.sqrt(variance(values, values.length, mean(values, values.length)));
     }
 
-    public static int calculateNumberOfOccurrences(Collection<Element> elements) {
-        int elementOccurrenceCount = 0;
-        for (Element element : elements) {
-            elementOccurrenceCount += element.getOccurrenceCount();
+    /**
+     * Mean of the first length values, NaN if there are none. Computed as commons-math's Mean does, the sum divided by
+     * the length and then corrected by the mean deviation from it, so the scores are unchanged to the last bit.
+     */
+    private static double mean(double[] values, int length) {
+        if (length == 0) {
+            return Double.NaN;
+        }
+        double sum = 0;
+        for (int index = 0; index < length; index++) {
+            sum += values[index];
+        }
+        double mean = sum / length;
+
+        double correction = 0;
+        for (int index = 0; index < length; index++) {
+            correction += values[index] - mean;
         }
+        return mean + correction / length;
+    }
 
-        return elementOccurrenceCount;
+    /**
+     * Bias corrected variance of the first length values about their mean, computed as commons-math's Variance does:
+     * NaN if there are no values, 0 for a single one.
+     */
+    private static double variance(double[] values, int length, double mean) {
+        if (length == 0) {
+            return Double.NaN;
+        }
+        if (length == 1) {
+            return 0;
+        }
+        double squaredDeviations = 0;
+        double deviations = 0;
+        for (int index = 0; index < length; index++) {
+            double deviation = values[index] - mean;
+            squaredDeviations += deviation * deviation;
+            deviations += deviation;
+        }
+        return (squaredDeviations - (deviations * deviations / length)) / (length - 1.0);
+    }
+
+    /**
+     * @return probability that a value from the normal distribution with the given mean and standard deviation is at
+     *         most x, as commons-math's NormalDistributionImpl would give it.
+     */
+    private static double normalCumulativeProbability(double x, double mean, double standardDeviation) throws MathException {
+        double deviation = x - mean;
+        // erf is already +-1 to double precision well before 40 standard deviations out
+        if (Math.abs(deviation) > 40 * standardDeviation) {
+            return deviation < 0 ? 0 : 1;
+        }
+        return 0.5 * (1.0 + Erf.erf(deviation / (standardDeviation * Math.sqrt(2.0))));
+    }
+
+    public static long calculateNumberOfOccurrences(ElementSet elements) {
+        return elements.getOccurrences();
     }
 
     /**
      * Gets the unique collection of elements within a classification
      *
+     * @param index           - ElementIndex the classifications were loaded against
      * @param classifications - Set of ClassificationSchema objects to query
-     * @return Collection<Element> - a unique collection of Element objects.
+     * @return ElementSet - the union of the elements in each Classification.
      */
-    public static Collection<Element> getElementsInSchemas(Collection<Classification> classifications) {
-        Map<String, Element> elements = new HashMap<String, Element>();
+    public static ElementSet getElementsInSchemas(ElementIndex index, Collection<Classification> classifications) {
+        ElementSet elements = new ElementSet(index);
 
         for (Classification classification : classifications) {
-            for (Element element : classification.getElements()) {
-                if (!elements.containsKey(element.getName())) {
-                    elements.put(element.getName(), element);
-                }
-            }
+            classification.orInto(elements);
         }
 
-        return elements.values();
+        return elements;
     }
 
 
-    public static double getMeanElements(ClassificationSchema schema, Collection<Element> elements) {
+    public static double getMeanElements(ClassificationSchema schema, ElementSet elements) {
 
-        Mean mean = new Mean();
+        // updated a value at a time, as commons-math's Mean.increment does
+        double mean = Double.NaN;
+        int count = 0;
 
         for (Classification classification : schema.getClassifications().values()) {
-            int numberOfElements = 0;
-            for (Element classificationElement : classification.getElements()) {
-                if (elements.contains(classificationElement)) {
-                    numberOfElements++;
-                }
+            if (count++ == 0) {
+                mean = 0;
             }
-            mean.increment(numberOfElements);
+            mean += (classification.andCardinality(elements) - mean) / count;
         }
 
-        return mean.getResult();
+        return mean;
     }
 
     public static Set<ClassificationSchema> findSchemaForClassification(Collection<ClassificationSchema> classificationSchemas,
-                                                                        Collection<Element> elementsToBeClassified) {
+                                                                        ElementSet elementsToBeClassified) {
         Set<ClassificationSchema> validClassificationSchemas = new HashSet<ClassificationSchema>();
 
         // we need to find classification schemas which contain just the elements within this classification
         for (ClassificationSchema classificationSchema : classificationSchemas) {
-            Set<Element> elementsInSchema = new HashSet<Element>();
+            ElementSet elementsInSchema = new ElementSet(elementsToBeClassified.getIndex());
             for (Classification classificationToInspect : classificationSchema.getClassifications().values()) {
-                for (Element element : classificationToInspect.getElements()) {
-                    if (elementsInSchema.contains(element)) {
-                        System.out.println("WARNING: The element " + element.getName() +
-                                " is classified twice in the same ClassificationSchema (duplicate at "
-                                + classificationToInspect.getName() + ")");
-                    } else {
-                        elementsInSchema.add(element);
-                    }
+                for (Element element : classificationToInspect.and(elementsInSchema)) {
+                    log.warning("The element " + element.getName() +
+                            " is classified twice in the same ClassificationSchema (duplicate at "
+                            + classificationToInspect.getName() + ")");
                 }
+                classificationToInspect.orInto(elementsInSchema);
             }
             // now check if this set of elements contains only those elements in the classification we are checking
             if (checkIfSubset(elementsToBeClassified, elementsInSchema)) {
@@ -199,22 +251,25 @@ public class Statistics {
     }
 
     public static boolean checkIfSubset(
-            Collection<Element> elementsInSchema, Collection<Element> elementsToBeClassified) {
+            ElementSet elementsInSchema, ElementSet elementsToBeClassified) {
         // Ensuring that child class contains all parent class elements
-        for (Element element : elementsToBeClassified) {
-            // this would obviously break down if our sub classification
-            // did not classify everything properly
-            if (!elementsInSchema.contains(element)) {
-                return false;
-            }
-        }
-
-        return true;
+        return elementsInSchema.containsAll(elementsToBeClassified);
     }
 
     public static ClassificationSchema selectNextBestSchema(Set<ClassificationSchema> validClassificationSchemas, FitnessCalculator fitnessCalculator, Set<ClassificationSchema> observedClassificationSchemas) {
+        return selectNextBestSchema(validClassificationSchemas, fitnessCalculator.getFitnessResults(), observedClassificationSchemas);
+    }
+
+    /**
+     * As selectNextBestSchema(valid, results, observed), without needing the results to be sorted first.
+     */
+    public static ClassificationSchema selectNextBestSchema(Set<ClassificationSchema> validClassificationSchemas, FitnessRanking fitnessRanking, Set<ClassificationSchema> observedClassificationSchemas) {
+        return fitnessRanking.selectFittestSchema(validClassificationSchemas, observedClassificationSchemas);
+    }
+
+    public static ClassificationSchema selectNextBestSchema(Set<ClassificationSchema> validClassificationSchemas, List<FitnessResult> fitnessResults, Set<ClassificationSchema> observedClassificationSchemas) {
         ClassificationSchema selectedSchema = null;
-        for (FitnessResult fitnessResult : fitnessCalculator.getFitnessResults()) {
+        for (FitnessResult fitnessResult : fitnessResults) {
             // we will ALWAYS process in order. So we just take the first one which becomes
             // available and which hasn't already been recorded
             if (!observedClassificationSchemas.contains(fitnessResult.getSchema())
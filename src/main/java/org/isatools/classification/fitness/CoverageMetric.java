@@ -1,13 +1,5 @@
 package org.isatools.classification.fitness;
 
-import org.isatools.classification.Classification;
-import org.isatools.classification.ClassificationSchema;
-import org.isatools.classification.Element;
-
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
-
 /**
  * Created by the ISA team
  *
@@ -23,18 +15,8 @@ public class CoverageMetric extends FitnessMetric {
      * Will return a value between 0 and 1 reflecting the percent coverage of the current schema on the total number
      * of elements
      */
-    public double calculate(ClassificationSchema schema, Collection<Element> elements) {
-        Set<Element> elementCoverage = new HashSet<Element>();
-
-        for (Classification classification : schema.getClassifications().values()) {
-            for (Element element : classification.getElements()) {
-                if (elements.contains(element)) {
-                    elementCoverage.add(element);
-                }
-            }
-
-        }
-        return Math.min(1, (double) elementCoverage.size() / elements.size());
+    public double calculate(SchemaProfile profile) {
+        return Math.min(1, (double) profile.getCoveredCount() / profile.getElementCount());
     }
 
     @Override
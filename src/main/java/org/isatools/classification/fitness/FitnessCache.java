@@ -0,0 +1,154 @@
+package org.isatools.classification.fitness;
+
+import org.isatools.classification.ClassificationSchema;
+import org.isatools.classification.ElementSet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the unweighted metric values computed for a schema over a particular set of elements, so that a node whose
+ * elements have already been scored (e.g. sibling branches ending up with the same elements, or the same node in trees
+ * built with different weights) does not score them again.
+ * <p/>
+ * Entries are keyed on the contents of the ElementSet, looked up by its fingerprint and confirmed by comparing the
+ * bits, and evicted least recently used first once the estimated size of the element sets and results held exceeds
+ * the byte budget. Cached results are shared by everyone using the cache, so must not be modified.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public class FitnessCache {
+
+    // estimated heap taken by an entry besides its element set's words: the entry, its results map, the copied
+    // ElementSet and its slot in the list of entries with the same fingerprint
+    private static final long ENTRY_BYTES = 160;
+    // estimated heap taken by each cached result: the FitnessResult, its array of metric values and its map entry
+    private static final long RESULT_BYTES = 48 + 16 + 8L * MetricType.values().length + 32;
+
+    private final long maximumBytes;
+    private long bytesHeld;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    // fingerprint -> entries with that fingerprint, iterated least recently used first
+    private final LinkedHashMap<Long, List<Entry>> entries = new LinkedHashMap<Long, List<Entry>>(16, 0.75f, true);
+
+    /**
+     * @param maximumBytes - upper bound on the estimated size of the element sets and results held
+     */
+    public FitnessCache(long maximumBytes) {
+        this.maximumBytes = maximumBytes;
+    }
+
+    /**
+     * @param schema   - schema scored
+     * @param elements - elements it was scored against
+     * @return the cached result, or null if the schema has not been scored against these elements
+     */
+    public synchronized FitnessResult get(ClassificationSchema schema, ElementSet elements) {
+        Entry entry = findEntry(elements);
+        FitnessResult result = entry == null ? null : entry.results.get(schema);
+
+        if (result == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return result;
+    }
+
+    public synchronized void put(ClassificationSchema schema, ElementSet elements, FitnessResult result) {
+        Entry entry = findEntry(elements);
+        if (entry == null) {
+            entry = new Entry(elements.copy());
+
+            List<Entry> sameFingerprint = entries.get(elements.fingerprint());
+            if (sameFingerprint == null) {
+                sameFingerprint = new ArrayList<Entry>(1);
+                entries.put(elements.fingerprint(), sameFingerprint);
+            }
+            sameFingerprint.add(entry);
+
+            bytesHeld += entry.getBytes();
+        }
+        if (entry.results.put(schema, result) == null) {
+            bytesHeld += RESULT_BYTES;
+        }
+        evict();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    public synchronized long getBytesHeld() {
+        return bytesHeld;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytesHeld = 0;
+    }
+
+    public synchronized String toString() {
+        return "FitnessCache hits=" + hits + " misses=" + misses + " evictions=" + evictions
+                + " bytes=" + bytesHeld;
+    }
+
+    private Entry findEntry(ElementSet elements) {
+        List<Entry> sameFingerprint = entries.get(elements.fingerprint());
+        if (sameFingerprint != null) {
+            for (Entry entry : sameFingerprint) {
+                if (entry.elements.sameElements(elements)) {
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void evict() {
+        Iterator<List<Entry>> eldest = entries.values().iterator();
+        // the entry just added to is the most recently used, and is never evicted even if it alone is over budget
+        while (bytesHeld > maximumBytes && entries.size() > 1 && eldest.hasNext()) {
+            for (Entry entry : eldest.next()) {
+                bytesHeld -= entry.getBytes();
+                evictions++;
+            }
+            eldest.remove();
+        }
+    }
+
+    private static class Entry {
+        private final ElementSet elements;
+        private final Map<ClassificationSchema, FitnessResult> results =
+                new HashMap<ClassificationSchema, FitnessResult>();
+
+        private Entry(ElementSet elements) {
+            this.elements = elements;
+        }
+
+        private long getBytes() {
+            return ENTRY_BYTES + elements.getWordCount() * 8L + results.size() * RESULT_BYTES;
+        }
+    }
+}
@@ -1,9 +1,20 @@
 package org.isatools.classification.fitness;
 
+import org.isatools.classification.Classification;
 import org.isatools.classification.ClassificationSchema;
-import org.isatools.classification.Element;
+import org.isatools.classification.ElementSet;
+import org.isatools.classification.NodeCounts;
+import org.isatools.classification.monitor.ClassificationMetrics;
+import org.isatools.classification.monitor.Counter;
+import org.isatools.classification.monitor.Timer;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Created by the ISA team
@@ -15,41 +26,93 @@ import java.util.*;
  */
 public class FitnessCalculator {
 
-    private List<FitnessMetric> metricsToPerform = new ArrayList<FitnessMetric>();
-    private List<FitnessResult> fitnessResults = new ArrayList<FitnessResult>();
+    private static final Logger log = Logger.getLogger(FitnessCalculator.class.getName());
 
-    private Map<MetricType, Double> metricWeights;
-    private FitnessResult maxFitness;
+    private FitnessMetric[] metricsToPerform;
+    // results of the most recent calculation. Each calculation builds a new ranking so that concurrent callers
+    // each keep hold of their own results.
+    private volatile FitnessRanking fitnessRanking = new FitnessRanking(new ArrayList<FitnessResult>());
+
+    // weight of each metric, indexed by MetricType.ordinal()
+    private double[] metricWeights;
+
+    // when null, schemas are scored one after the other on the calling thread
+    private ForkJoinPool forkJoinPool;
+
+    // when null, every schema is scored afresh
+    private FitnessCache fitnessCache;
+
+    // when null, nothing is recorded. Scoring is timed a node at a time: each metric takes nanoseconds, which timing
+    // it alone would more than double.
+    private ClassificationMetrics metrics;
+    private Timer nodeFitnessTimer;
+    private Counter schemasScored;
+    private Counter cachedSchemas;
+    private Counter prunedSchemas;
 
     public FitnessCalculator() {
         this(new HashMap<MetricType, Double>());
     }
 
     /**
-     * FitnessCalculator can take a Map of weights for each of the metrics.
+     * FitnessCalculator can take a Map of weights for each of the metrics. Metrics without a weight count once. The
+     * weights are read when the calculator is created, later changes to the map are not seen.
      *
      * @param metricWeights
      */
     public FitnessCalculator(Map<MetricType, Double> metricWeights) {
-        this.metricWeights = metricWeights;
-        this.maxFitness = null;
+        this(metricWeights, null);
+    }
+
+    /**
+     * FitnessCalculator which scores the schemas concurrently in the given pool. Results are merged back in the order
+     * the schemas were given, so the sorted results are the same as those of a serial run.
+     *
+     * @param metricWeights - weights for each of the metrics
+     * @param forkJoinPool  - pool to evaluate the schemas in, or null to evaluate them serially
+     */
+    public FitnessCalculator(Map<MetricType, Double> metricWeights, ForkJoinPool forkJoinPool) {
+        this.metricWeights = new double[MetricType.values().length];
+        for (MetricType metricType : MetricType.values()) {
+            Double weight = metricWeights.get(metricType);
+            this.metricWeights[metricType.ordinal()] = weight == null ? 1 : weight;
+        }
+        this.forkJoinPool = forkJoinPool;
 
         instantiateFitnessMetrics();
     }
 
-    public List<FitnessResult> calculateFitnessForAllSchemas(Collection<ClassificationSchema> schemas, Collection<Element> elements) {
-        resetCalculator();
+    public List<FitnessResult> calculateFitnessForAllSchemas(Collection<ClassificationSchema> schemas, ElementSet elements) {
+        return rankSchemas(schemas, elements, null).getResults();
+    }
+
+    /**
+     * Scores the schemas against the elements of a tree node, using the counts already gathered for that node.
+     *
+     * @param schemas - schemas to score
+     * @param counts  - counts for the elements still to be classified
+     * @return FitnessResults, fittest first
+     */
+    public List<FitnessResult> calculateFitnessForAllSchemas(Collection<ClassificationSchema> schemas, NodeCounts counts) {
+        return rankSchemas(schemas, counts.getElements(), counts).getResults();
+    }
 
-        for (ClassificationSchema schema : schemas) {
-            FitnessResult fitness = calculateFitness(schema, elements);
-            if(maxFitness == null) {
-                maxFitness = fitness;
-            } else if (fitness.getFitness() > maxFitness.getFitness()) {
-                maxFitness = fitness;
-            }
-            
-            fitnessResults.add(fitness);
-        }
+    /**
+     * Scores the schemas against the elements of a tree node without sorting the results, for callers which only
+     * need the fittest schemas.
+     *
+     * @param schemas - schemas to score
+     * @param counts  - counts for the elements still to be classified
+     * @return FitnessRanking of the schemas
+     */
+    public FitnessRanking rankSchemas(Collection<ClassificationSchema> schemas, NodeCounts counts) {
+        return rankSchemas(schemas, counts.getElements(), counts);
+    }
+
+    private FitnessRanking rankSchemas(Collection<ClassificationSchema> schemas, ElementSet elements, NodeCounts counts) {
+        long start = System.nanoTime();
+
+        List<FitnessResult> fitnessResults = calculateFitness(schemas, elements, counts);
 
         for(FitnessResult fitnessResult : fitnessResults) {
             if(fitnessResult.getMetricValue(MetricType.COVERAGE) == 0) {
@@ -59,72 +122,202 @@ public class FitnessCalculator {
             }
         }
 
-        Collections.sort(fitnessResults);
-        normaliseFitnessMetrics();
-        return fitnessResults;
+        FitnessRanking fitnessRanking = new FitnessRanking(fitnessResults);
+
+        this.fitnessRanking = fitnessRanking;
+
+        if (nodeFitnessTimer != null) {
+            nodeFitnessTimer.recordSince(start);
+        }
+        return fitnessRanking;
+    }
+
+    private List<FitnessResult> calculateFitness(Collection<ClassificationSchema> schemas, final ElementSet elements, final NodeCounts counts) {
+        List<FitnessResult> results = new ArrayList<FitnessResult>(schemas.size());
+
+        if (forkJoinPool == null || schemas.size() < 2) {
+            for (ClassificationSchema schema : schemas) {
+                results.add(calculateFitness(schema, elements, counts));
+            }
+            return results;
+        }
+
+        final List<ForkJoinTask<FitnessResult>> tasks = new ArrayList<ForkJoinTask<FitnessResult>>(schemas.size());
+        for (final ClassificationSchema schema : schemas) {
+            tasks.add(ForkJoinTask.adapt(new Callable<FitnessResult>() {
+                public FitnessResult call() {
+                    return calculateFitness(schema, elements, counts);
+                }
+            }));
+        }
+
+        if (ForkJoinTask.inForkJoinPool()) {
+            // already running as part of a larger fork join computation, so fork in to the current pool
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            forkJoinPool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+
+        // joined in submission order so that ties are sorted exactly as they would be in a serial run
+        for (ForkJoinTask<FitnessResult> task : tasks) {
+            results.add(task.join());
+        }
+        return results;
+    }
+
+    public FitnessResult calculateFitness(ClassificationSchema schema, ElementSet elements) {
+        return calculateFitness(schema, elements, null);
+    }
+
+    public FitnessResult calculateFitness(ClassificationSchema schema, NodeCounts counts) {
+        return calculateFitness(schema, counts.getElements(), counts);
+    }
+
+    private FitnessResult calculateFitness(ClassificationSchema schema, ElementSet elements, NodeCounts counts) {
+        if (!canSubdivide(schema, elements, counts)) {
+            if (prunedSchemas != null) {
+                prunedSchemas.increment();
+            }
+            // the fitness of this schema would be set to 0 whatever the other metrics came to
+            return new FitnessResult(schema);
+        }
+
+        FitnessResult rawResult = fitnessCache == null ? null : fitnessCache.get(schema, elements);
+        if (rawResult == null) {
+            rawResult = calculateRawMetrics(schema, elements, counts);
+            if (fitnessCache != null) {
+                fitnessCache.put(schema, elements, rawResult);
+            }
+            if (schemasScored != null) {
+                schemasScored.increment();
+            }
+        } else if (cachedSchemas != null) {
+            cachedSchemas.increment();
+        }
+        return applyWeights(rawResult);
+    }
+
+    /**
+     * Cheap check made before any metrics are run. A schema holding the elements in fewer than two of its
+     * classifications has a SUBTREE_BALANCE of 0 (and one holding none of them a COVERAGE of 0), so its fitness is
+     * set to 0 in rankSchemas() whatever the other metrics come to, and it can never be selected.
+     *
+     * @return false if the schema can't divide the elements between two or more of its classifications
+     */
+    private boolean canSubdivide(ClassificationSchema schema, ElementSet elements, NodeCounts counts) {
+        int classificationsWithElements = 0;
+        for (Classification classification : schema.getClassifications().values()) {
+            boolean hasElements = counts == null
+                    ? classification.intersects(elements) : counts.getCount(classification) > 0;
+            if (hasElements && ++classificationsWithElements > 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return FitnessResult holding the unweighted value of each metric, which is independent of the weights
+     */
+    private FitnessResult calculateRawMetrics(ClassificationSchema schema, ElementSet elements, NodeCounts counts) {
+        FitnessResult rawResult = new FitnessResult(schema);
+
+        // gathered once and shared by all the metrics
+        SchemaProfile profile = counts == null ? new SchemaProfile(schema, elements) : new SchemaProfile(schema, counts);
+
+        for (FitnessMetric metric : metricsToPerform) {
+            rawResult.addMetricValue(metric.getMetricType(), metric.calculate(profile));
+        }
+        return rawResult;
     }
 
-    public FitnessResult calculateFitness(ClassificationSchema schema, Collection<Element> elements) {
+    private FitnessResult applyWeights(FitnessResult rawResult) {
         double overallValue = 0.0;
-        
-        System.out.println("Calculating fitness for " + schema.getName());
-        
-        FitnessResult result = new FitnessResult(schema);
-        
+
+        // trace is logged in one go so that it isn't interleaved with other schemas when running in parallel, and
+        // only built at all when it will be logged
+        StringBuilder trace = log.isLoggable(Level.FINEST)
+                ? new StringBuilder("Calculating fitness for ").append(rawResult.getSchema().getName()) : null;
+
+        FitnessResult result = new FitnessResult(rawResult.getSchema());
+
         for (FitnessMetric metric : metricsToPerform) {
-            double weight = metricWeights.get(metric.getMetricType()) == null ? 1 : metricWeights.get(metric.getMetricType());
-            double value = weight * metric.calculate(schema, elements);
+            MetricType metricType = metric.getMetricType();
+            double value = metricWeights[metricType.ordinal()] * rawResult.getMetricValue(metricType);
 
-            result.addMetricValue(metric.getMetricType(), value);
-            
-            System.out.println(metric.getMetricType() + " yielded " + value);
+            result.addMetricValue(metricType, value);
+
+            if (trace != null) {
+                trace.append('\n').append(metricType).append(" yielded ").append(value);
+            }
             overallValue += value;
-            
+        }
+        if (trace != null) {
+            log.finest(trace.toString());
         }
         result.setFitness(overallValue);
         return result;
     }
 
-    private void normaliseFitnessMetrics() {
+    public FitnessCache getFitnessCache() {
+        return fitnessCache;
+    }
 
-        // We store the last value to check if two numbers actually have the same rank, but are in different positions
-        double lastValue = Double.MIN_VALUE;
-        int lastRank = 0;
+    /**
+     * @param fitnessCache - cache of unweighted metric values to consult before scoring a schema, or null to always
+     *                     score it. The cache may be shared by calculators with different weights.
+     */
+    public void setFitnessCache(FitnessCache fitnessCache) {
+        this.fitnessCache = fitnessCache;
+    }
 
-        int count = 0;
-        for (FitnessResult result : fitnessResults) {
-            if (lastValue == result.getFitness()) {
-                result.setNormalizedFitness(lastRank / fitnessResults.size());
-            } else {
-                result.setNormalizedFitness((double) count / (fitnessResults.size() - 1));
-                lastRank = count;
-                lastValue = result.getFitness();
-            }
-            count++;
+    public ClassificationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param metrics - registry to record the time taken scoring each node and the schemas scored, or null to record
+     *                nothing
+     */
+    public void setMetrics(ClassificationMetrics metrics) {
+        this.metrics = metrics;
+        if (metrics == null) {
+            nodeFitnessTimer = null;
+            schemasScored = null;
+            cachedSchemas = null;
+            prunedSchemas = null;
+            return;
         }
 
+        nodeFitnessTimer = metrics.getTimer(ClassificationMetrics.NODE_FITNESS);
+        schemasScored = metrics.getCounter(ClassificationMetrics.SCHEMAS_SCORED);
+        cachedSchemas = metrics.getCounter(ClassificationMetrics.CACHED_SCHEMAS);
+        prunedSchemas = metrics.getCounter(ClassificationMetrics.PRUNED_SCHEMAS);
     }
 
+    /**
+     * @return results of the most recent calculation, fittest first
+     */
     public List<FitnessResult> getFitnessResults() {
-        return fitnessResults;
+        return fitnessRanking.getResults();
     }
 
     private void instantiateFitnessMetrics() {
         FitnessMetric coverageMetric = new CoverageMetric();
-        metricsToPerform.add(coverageMetric);
-
         FitnessMetric potentialUsageMetric = new PotentialUsageMetric();
-        metricsToPerform.add(potentialUsageMetric);
-
         FitnessMetric subClassCountMetric = new SubclassCountMetric();
-        metricsToPerform.add(subClassCountMetric);
-
         FitnessMetric subtreeBalanceMetric = new SubtreeBalanceMetric();
-        metricsToPerform.add(subtreeBalanceMetric);
+
+        // evaluated, and their weighted values summed, in this order
+        metricsToPerform = new FitnessMetric[]{coverageMetric, potentialUsageMetric, subClassCountMetric, subtreeBalanceMetric};
     }
 
     public void resetCalculator() {
-        fitnessResults.clear();
-        maxFitness = null;
+        fitnessRanking = new FitnessRanking(new ArrayList<FitnessResult>());
     }
 }
@@ -1,10 +1,8 @@
 package org.isatools.classification.fitness;
 
 import org.isatools.classification.ClassificationSchema;
-import org.isatools.classification.Element;
-
-import java.util.Collection;
-import java.util.Set;
+import org.isatools.classification.ElementSet;
+import org.isatools.classification.NodeCounts;
 
 /**
  * Created by the ISA team
@@ -17,5 +15,20 @@ import java.util.Set;
 public abstract class FitnessMetric {
     public abstract MetricType getMetricType();
 
-    public abstract double calculate(ClassificationSchema schema, Collection<Element> elements);
+    /**
+     * Scores a schema from its profile over the elements still to be classified. The FitnessCalculator builds the
+     * profile once per schema and shares it between all the metrics.
+     *
+     * @param profile - how the schema divides up the elements
+     * @return the metric value
+     */
+    public abstract double calculate(SchemaProfile profile);
+
+    public double calculate(ClassificationSchema schema, ElementSet elements) {
+        return calculate(new SchemaProfile(schema, elements));
+    }
+
+    public double calculate(ClassificationSchema schema, NodeCounts counts) {
+        return calculate(new SchemaProfile(schema, counts));
+    }
 }
@@ -0,0 +1,166 @@
+package org.isatools.classification.fitness;
+
+import org.isatools.classification.ClassificationSchema;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The FitnessResults of a set of schemas scored at one node. Selecting the fittest schemas only looks at the results
+ * once (or through a heap bounded by the number wanted), the full sort and normalisation of every result being left
+ * until the results are asked for, e.g. to report them.
+ * <p/>
+ * Ties are resolved in the order the schemas were scored in, exactly as the stable sort of getResults() does, so the
+ * fittest result is always the first of the sorted results.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public class FitnessRanking {
+
+    // in the order the schemas were scored
+    private final List<FitnessResult> results;
+    private List<FitnessResult> sortedResults;
+
+    FitnessRanking(List<FitnessResult> results) {
+        this.results = results;
+    }
+
+    /**
+     * @return number of schemas scored
+     */
+    public int size() {
+        return results.size();
+    }
+
+    /**
+     * @return the fittest result, whatever its fitness, or null if no schemas were scored
+     */
+    public FitnessResult getFittest() {
+        FitnessResult fittest = null;
+        for (FitnessResult result : results) {
+            if (fittest == null || result.getFitness() > fittest.getFitness()) {
+                fittest = result;
+            }
+        }
+        return fittest;
+    }
+
+    /**
+     * @param count    - maximum number of results to return
+     * @param eligible - schemas which may be returned, or null for any
+     * @param excluded - schemas which may not be returned, or null for none
+     * @return up to count results with a non zero fitness for eligible schemas, fittest first
+     */
+    public List<FitnessResult> getFittest(int count, Collection<ClassificationSchema> eligible,
+                                          Collection<ClassificationSchema> excluded) {
+        if (count == 1) {
+            FitnessResult fittest = null;
+            for (FitnessResult result : results) {
+                if (isCandidate(result, eligible, excluded)
+                        && (fittest == null || result.getFitness() > fittest.getFitness())) {
+                    fittest = result;
+                }
+            }
+            return fittest == null ? Collections.<FitnessResult>emptyList() : Collections.singletonList(fittest);
+        }
+
+        // least fit candidate at the head, so it is the one dropped when the heap is over size
+        PriorityQueue<RankedResult> heap = new PriorityQueue<RankedResult>(Math.max(1, count + 1), new Comparator<RankedResult>() {
+            public int compare(RankedResult first, RankedResult second) {
+                return -first.compareTo(second);
+            }
+        });
+
+        for (int position = 0; position < results.size(); position++) {
+            FitnessResult result = results.get(position);
+            if (isCandidate(result, eligible, excluded)) {
+                heap.add(new RankedResult(result, position));
+                if (heap.size() > count) {
+                    heap.poll();
+                }
+            }
+        }
+
+        List<FitnessResult> fittest = new ArrayList<FitnessResult>(heap.size());
+        while (!heap.isEmpty()) {
+            fittest.add(heap.poll().result);
+        }
+        Collections.reverse(fittest);
+        return fittest;
+    }
+
+    /**
+     * @param eligible - schemas which may be selected
+     * @param excluded - schemas which may not be selected
+     * @return the schema of the fittest result with a non zero fitness, or null if there is none
+     */
+    public ClassificationSchema selectFittestSchema(Collection<ClassificationSchema> eligible,
+                                                    Collection<ClassificationSchema> excluded) {
+        List<FitnessResult> fittest = getFittest(1, eligible, excluded);
+        return fittest.isEmpty() ? null : fittest.get(0).getSchema();
+    }
+
+    /**
+     * @return every result, fittest first and normalised. Sorted on the first call.
+     */
+    public synchronized List<FitnessResult> getResults() {
+        if (sortedResults == null) {
+            sortedResults = new ArrayList<FitnessResult>(results);
+            Collections.sort(sortedResults);
+            normaliseFitnessMetrics(sortedResults);
+        }
+        return sortedResults;
+    }
+
+    private boolean isCandidate(FitnessResult result, Collection<ClassificationSchema> eligible,
+                                Collection<ClassificationSchema> excluded) {
+        return result.getFitness() != 0
+                && (eligible == null || eligible.contains(result.getSchema()))
+                && (excluded == null || !excluded.contains(result.getSchema()));
+    }
+
+    private static void normaliseFitnessMetrics(List<FitnessResult> fitnessResults) {
+
+        // We store the last value to check if two numbers actually have the same rank, but are in different positions
+        double lastValue = Double.MIN_VALUE;
+        int lastRank = 0;
+
+        int count = 0;
+        for (FitnessResult result : fitnessResults) {
+            if (lastValue == result.getFitness()) {
+                result.setNormalizedFitness(lastRank / fitnessResults.size());
+            } else {
+                result.setNormalizedFitness((double) count / (fitnessResults.size() - 1));
+                lastRank = count;
+                lastValue = result.getFitness();
+            }
+            count++;
+        }
+
+    }
+
+    /**
+     * A result with its scoring position, ordered fittest first and then by position.
+     */
+    private static class RankedResult implements Comparable<RankedResult> {
+        private final FitnessResult result;
+        private final int position;
+
+        private RankedResult(FitnessResult result, int position) {
+            this.result = result;
+            this.position = position;
+        }
+
+        public int compareTo(RankedResult other) {
+            int byFitness = result.compareTo(other.result);
+            if (byFitness != 0) {
+                return byFitness;
+            }
+            return position < other.position ? -1 : (position == other.position ? 0 : 1);
+        }
+    }
+}
@@ -2,9 +2,6 @@ package org.isatools.classification.fitness;
 
 import org.isatools.classification.ClassificationSchema;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * Created by the ISA team
  *
@@ -15,11 +12,14 @@ import java.util.Map;
  */
 public class FitnessResult implements Comparable<FitnessResult> {
 
+    private static final int METRIC_COUNT = MetricType.values().length;
+
     private ClassificationSchema schema;
     private double fitness;
     private double normalizedFitness;
 
-    private Map<MetricType, Double> metricToValue;
+    // indexed by MetricType.ordinal(), 0 for metrics which haven't been calculated
+    private double[] metricValues;
 
     public FitnessResult(ClassificationSchema schema) {
         this(schema, 0.0);
@@ -28,7 +28,7 @@ public class FitnessResult implements Comparable<FitnessResult> {
     public FitnessResult(ClassificationSchema schema, double fitness) {
         this.schema = schema;
         this.fitness = fitness;
-        metricToValue = new HashMap<MetricType, Double>();
+        metricValues = new double[METRIC_COUNT];
     }
 
     public ClassificationSchema getSchema() {
@@ -57,15 +57,11 @@ public class FitnessResult implements Comparable<FitnessResult> {
     }
 
     public double getMetricValue(MetricType metric) {
-        if (metricToValue.containsKey(metric)) {
-            return metricToValue.get(metric);
-        } else {
-            return 0;
-        }
+        return metricValues[metric.ordinal()];
     }
 
     public void addMetricValue(MetricType metric, double value) {
-        metricToValue.put(metric, value);
+        metricValues[metric.ordinal()] = value;
     }
 
     public void setFitness(double fitness) {
@@ -1,11 +1,5 @@
 package org.isatools.classification.fitness;
 
-import org.isatools.classification.ClassificationSchema;
-import org.isatools.classification.Element;
-import org.isatools.classification.Statistics;
-
-import java.util.Collection;
-
 /**
  * Created by the ISA team
  *
@@ -20,10 +14,10 @@ public class PotentialUsageMetric extends FitnessMetric {
      * Will return a value between 0 and 1 reflecting the percent coverage of the current schema on the total number
      * of occurrences in the classifcation vs the overall number of element occurrences.
      */
-    public double calculate(ClassificationSchema schema, Collection<Element> elements) {
+    public double calculate(SchemaProfile profile) {
         // calculate coverage as proportion of occurrences
 
-        return Math.min(1, Statistics.getOccurrencesWithinClassificationSchema(schema, elements) / Statistics.calculateNumberOfOccurrences(elements));
+        return Math.min(1, (double) profile.getTotalClassificationOccurrences() / profile.getOccurrences());
     }
 
     @Override
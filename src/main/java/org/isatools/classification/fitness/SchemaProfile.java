@@ -0,0 +1,159 @@
+package org.isatools.classification.fitness;
+
+import org.isatools.classification.Classification;
+import org.isatools.classification.ClassificationSchema;
+import org.isatools.classification.ElementSet;
+import org.isatools.classification.NodeCounts;
+
+/**
+ * How a schema divides up the elements still to be classified: for each of its classifications, how many of the
+ * elements it holds and their total occurrences, plus how many distinct elements the schema covers overall. It is
+ * gathered once per schema and handed to every FitnessMetric, so adding metrics doesn't add passes over the elements.
+ * <p/>
+ * Per classification values are in the iteration order of schema.getClassifications().values().
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public class SchemaProfile {
+
+    private ClassificationSchema schema;
+
+    private int elementCount;
+    private long occurrences;
+
+    private double[] classificationCounts;
+    private long[] classificationOccurrences;
+
+    private int coveredCount;
+    private long coveredOccurrences;
+
+    /**
+     * Builds the profile from counts already gathered for a node of the tree.
+     *
+     * @param schema - schema to profile
+     * @param counts - counts for the elements still to be classified
+     */
+    public SchemaProfile(ClassificationSchema schema, NodeCounts counts) {
+        this(schema, counts.getElementCount(), counts.getOccurrences());
+
+        int index = 0;
+        for (Classification classification : schema.getClassifications().values()) {
+            classificationCounts[index] = counts.getCount(classification);
+            classificationOccurrences[index] = counts.getOccurrences(classification);
+            index++;
+        }
+        coveredCount = counts.getCoveredCount(schema);
+        coveredOccurrences = counts.getCoveredOccurrences(schema);
+    }
+
+    /**
+     * Builds the profile in a single pass over the bitset words of the elements and the schema's classifications.
+     *
+     * @param schema   - schema to profile
+     * @param elements - elements still to be classified
+     */
+    public SchemaProfile(ClassificationSchema schema, ElementSet elements) {
+        this(schema, elements.size(), elements.getOccurrences());
+
+        // read a word at a time, so out of core classifications are never copied on to the heap
+        Classification[] members = schema.getClassifications().values().toArray(
+                new Classification[schema.getClassifications().size()]);
+
+        for (int wordIndex = 0; wordIndex < elements.getWordCount(); wordIndex++) {
+            long elementWord = elements.getWord(wordIndex);
+            if (elementWord == 0) {
+                continue;
+            }
+
+            long covered = 0;
+            for (int classification = 0; classification < members.length; classification++) {
+                long word = members[classification].getWord(wordIndex) & elementWord;
+                if (word != 0) {
+                    classificationCounts[classification] += Long.bitCount(word);
+                    classificationOccurrences[classification] += elements.getIndex().sumOccurrences(wordIndex, word);
+                    covered |= word;
+                }
+            }
+            coveredCount += Long.bitCount(covered);
+            coveredOccurrences += elements.getIndex().sumOccurrences(wordIndex, covered);
+        }
+    }
+
+    private SchemaProfile(ClassificationSchema schema, int elementCount, long occurrences) {
+        this.schema = schema;
+        this.elementCount = elementCount;
+        this.occurrences = occurrences;
+
+        classificationCounts = new double[schema.getClassifications().size()];
+        classificationOccurrences = new long[schema.getClassifications().size()];
+    }
+
+    public ClassificationSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * @return number of elements still to be classified
+     */
+    public int getElementCount() {
+        return elementCount;
+    }
+
+    /**
+     * @return total occurrences of the elements still to be classified
+     */
+    public long getOccurrences() {
+        return occurrences;
+    }
+
+    /**
+     * @return number of the elements in each classification of the schema
+     */
+    public double[] getClassificationCounts() {
+        return classificationCounts;
+    }
+
+    /**
+     * @return total occurrences of the elements in each classification of the schema
+     */
+    public long[] getClassificationOccurrences() {
+        return classificationOccurrences;
+    }
+
+    /**
+     * @return sum of the occurrences in each classification. Elements in more than one classification count more than
+     *         once.
+     */
+    public long getTotalClassificationOccurrences() {
+        long total = 0;
+        for (long classificationOccurrence : classificationOccurrences) {
+            total += classificationOccurrence;
+        }
+        return total;
+    }
+
+    /**
+     * @return number of classifications holding at least one of the elements
+     */
+    public int getClassificationsWithElements() {
+        int classificationsWithElements = 0;
+        for (double count : classificationCounts) {
+            if (count > 0) classificationsWithElements++;
+        }
+        return classificationsWithElements;
+    }
+
+    /**
+     * @return number of elements in at least one of the schema's classifications
+     */
+    public int getCoveredCount() {
+        return coveredCount;
+    }
+
+    /**
+     * @return total occurrences of the elements in at least one of the schema's classifications
+     */
+    public long getCoveredOccurrences() {
+        return coveredOccurrences;
+    }
+}
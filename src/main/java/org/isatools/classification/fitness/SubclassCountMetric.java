@@ -1,11 +1,5 @@
 package org.isatools.classification.fitness;
 
-import org.isatools.classification.ClassificationSchema;
-import org.isatools.classification.Element;
-
-import java.util.Collection;
-import java.util.Set;
-
 /**
  * Created by the ISA team
  *
@@ -18,8 +12,8 @@ public class SubclassCountMetric extends FitnessMetric {
     private static final int UPPER_LIMIT = 10;
 
     @Override
-    public double calculate(ClassificationSchema schema, Collection<Element> elements) {
-        int classificationCount = schema.getClassifications().size();
+    public double calculate(SchemaProfile profile) {
+        int classificationCount = profile.getSchema().getClassifications().size();
         if (classificationCount < 2) {
             return 0;
         } else if (classificationCount > UPPER_LIMIT) {
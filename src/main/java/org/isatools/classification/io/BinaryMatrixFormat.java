@@ -0,0 +1,60 @@
+package org.isatools.classification.io;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Layout of the binary process matrix written by BinaryMatrixWriter and mapped by BinaryMatrixLoader. All values are
+ * big endian and every section after the header starts on an 8 byte boundary.
+ * <pre>
+ * int    magic, version, element count, column count
+ * column count x (int length, UTF-8 bytes) schema name, (int length, UTF-8 bytes) classification name
+ * int[element count]                         occurrence counts, indexed by element id
+ * long[column count][(element count + 63) / 64] membership bits for each column, bit i being element i
+ * int[element count + 1]                     offset of each element name in the name bytes, plus the end offset
+ * byte[]                                     UTF-8 element names
+ * </pre>
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public final class BinaryMatrixFormat {
+
+    public static final int MAGIC = 0x43544742; // "CTGB"
+    public static final int VERSION = 1;
+
+    // the binary matrix keeps the column numbering of the tab separated matrix, where classifications start at 2
+    public static final int FIRST_CLASSIFICATION_COLUMN = 2;
+
+    private BinaryMatrixFormat() {
+    }
+
+    public static int wordsPerColumn(int elementCount) {
+        return (elementCount + 63) >>> 6;
+    }
+
+    public static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    /**
+     * @param file - file to inspect
+     * @return true if the file starts with the binary matrix magic number
+     */
+    public static boolean isBinaryMatrix(File file) {
+        if (file.length() < 4) {
+            return false;
+        }
+        try {
+            DataInputStream input = new DataInputStream(new FileInputStream(file));
+            try {
+                return input.readInt() == MAGIC;
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.isatools.classification.io;
+
+import org.isatools.classification.Classification;
+import org.isatools.classification.ClassificationDataset;
+import org.isatools.classification.ElementIndex;
+import org.isatools.classification.ElementSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Loads a binary process matrix (see BinaryMatrixFormat) by memory mapping it. Occurrence counts and membership bits
+ * are bulk copied out of the mapping, so nothing has to be parsed apart from the element names.
+ * <p/>
+ * Out of core, the membership columns are not copied at all: each Classification keeps its part of the mapping and
+ * reads its bits from it whenever they are needed, leaving the operating system to page the columns in and out. The
+ * heap then holds no membership bits, whatever the number of columns, and a matrix with more columns than fit in the
+ * heap can still be classified. The file must not change while the dataset is in use.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public class BinaryMatrixLoader implements DatasetLoader {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private boolean outOfCore;
+
+    public BinaryMatrixLoader() {
+        this(false);
+    }
+
+    /**
+     * @param outOfCore - true to leave the membership columns in the mapped file rather than copying them on to the heap
+     */
+    public BinaryMatrixLoader(boolean outOfCore) {
+        this.outOfCore = outOfCore;
+    }
+
+    public ClassificationDataset load(File matrixFile) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(matrixFile, "r");
+        try {
+            return load(file.getChannel());
+        } finally {
+            file.close();
+        }
+    }
+
+    private ClassificationDataset load(FileChannel channel) throws IOException {
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), Integer.MAX_VALUE));
+
+        if (header.getInt() != BinaryMatrixFormat.MAGIC) {
+            throw new IOException("Not a binary classification matrix");
+        }
+        int version = header.getInt();
+        if (version != BinaryMatrixFormat.VERSION) {
+            throw new IOException("Unsupported binary classification matrix version " + version);
+        }
+
+        int elementCount = header.getInt();
+        int columnCount = header.getInt();
+
+        String[] schemaNames = new String[columnCount];
+        String[] classificationNames = new String[columnCount];
+        for (int column = 0; column < columnCount; column++) {
+            schemaNames[column] = readString(header);
+            classificationNames[column] = readString(header);
+        }
+
+        long occurrencesStart = BinaryMatrixFormat.align(header.position());
+        long membershipStart = BinaryMatrixFormat.align(occurrencesStart + 4L * elementCount);
+        int wordsPerColumn = BinaryMatrixFormat.wordsPerColumn(elementCount);
+        long namesStart = membershipStart + 8L * wordsPerColumn * columnCount;
+
+        ClassificationDataset dataset = new ClassificationDataset();
+
+        IntBuffer occurrences = channel.map(FileChannel.MapMode.READ_ONLY, occurrencesStart, 4L * elementCount).asIntBuffer();
+        IntBuffer nameOffsets = channel.map(FileChannel.MapMode.READ_ONLY, namesStart, 4L * (elementCount + 1)).asIntBuffer();
+        long nameBytesStart = namesStart + 4L * (elementCount + 1);
+        ByteBuffer names = channel.map(FileChannel.MapMode.READ_ONLY, nameBytesStart, nameOffsets.get(elementCount));
+
+        byte[] nameBuffer = new byte[64];
+        for (int elementId = 0; elementId < elementCount; elementId++) {
+            int nameStart = nameOffsets.get(elementId);
+            int nameLength = nameOffsets.get(elementId + 1) - nameStart;
+            if (nameLength > nameBuffer.length) {
+                nameBuffer = new byte[Math.max(nameLength, nameBuffer.length * 2)];
+            }
+            names.position(nameStart);
+            names.get(nameBuffer, 0, nameLength);
+
+            // the element index keeps names as UTF-8, so they are never decoded
+            dataset.addElement(nameBuffer, 0, nameLength, occurrences.get(elementId));
+        }
+
+        ElementIndex elementIndex = dataset.getElementIndex();
+        for (int column = 0; column < columnCount; column++) {
+            // mappings stay valid once the channel is closed
+            LongBuffer columnWords = channel.map(FileChannel.MapMode.READ_ONLY,
+                    membershipStart + 8L * wordsPerColumn * column, 8L * wordsPerColumn).asLongBuffer();
+
+            Classification classification;
+            if (outOfCore) {
+                classification = new Classification(classificationNames[column], elementIndex, columnWords);
+            } else {
+                long[] words = new long[wordsPerColumn];
+                columnWords.get(words);
+                classification = new Classification(classificationNames[column], new ElementSet(elementIndex, words));
+            }
+
+            dataset.addClassification(BinaryMatrixFormat.FIRST_CLASSIFICATION_COLUMN + column, schemaNames[column],
+                    classification);
+        }
+
+        return dataset;
+    }
+
+    private String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+}
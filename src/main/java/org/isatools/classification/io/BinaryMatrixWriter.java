@@ -0,0 +1,112 @@
+package org.isatools.classification.io;
+
+import org.isatools.classification.ClassificationDataset;
+import org.isatools.classification.ClassificationSchema;
+import org.isatools.classification.ElementIndex;
+import org.isatools.classification.ElementSet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+/**
+ * Writes a ClassificationDataset in the binary matrix format described in BinaryMatrixFormat. Run as a program to
+ * convert a tab separated process matrix: BinaryMatrixWriter &lt;input.txt&gt; &lt;output.ctgb&gt;
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public class BinaryMatrixWriter {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private long position;
+
+    public void write(ClassificationDataset dataset, File outputFile) throws IOException {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile), 1 << 16));
+        try {
+            write(dataset, output);
+        } finally {
+            output.close();
+        }
+    }
+
+    private void write(ClassificationDataset dataset, DataOutputStream output) throws IOException {
+        ElementIndex elementIndex = dataset.getElementIndex();
+        Map<Integer, ClassificationSchema> classificationSchemas = dataset.getClassificationSchemas();
+
+        int elementCount = elementIndex.size();
+        position = 0;
+
+        writeInt(output, BinaryMatrixFormat.MAGIC);
+        writeInt(output, BinaryMatrixFormat.VERSION);
+        writeInt(output, elementCount);
+        writeInt(output, classificationSchemas.size());
+
+        for (Map.Entry<Integer, ClassificationSchema> column : classificationSchemas.entrySet()) {
+            writeString(output, column.getValue().getName());
+            writeString(output, column.getValue().getClassification(column.getKey()).getName());
+        }
+        pad(output);
+
+        for (int elementId = 0; elementId < elementCount; elementId++) {
+            writeInt(output, elementIndex.getOccurrenceCount(elementId));
+        }
+        pad(output);
+
+        int wordsPerColumn = BinaryMatrixFormat.wordsPerColumn(elementCount);
+        for (Map.Entry<Integer, ClassificationSchema> column : classificationSchemas.entrySet()) {
+            ElementSet members = column.getValue().getClassification(column.getKey()).getElements();
+            for (int wordIndex = 0; wordIndex < wordsPerColumn; wordIndex++) {
+                output.writeLong(members.getWord(wordIndex));
+            }
+            position += 8L * wordsPerColumn;
+        }
+
+        byte[][] names = new byte[elementCount][];
+        int nameOffset = 0;
+        for (int elementId = 0; elementId < elementCount; elementId++) {
+            names[elementId] = elementIndex.getElement(elementId).getName().getBytes(UTF8);
+            writeInt(output, nameOffset);
+            nameOffset += names[elementId].length;
+        }
+        writeInt(output, nameOffset);
+
+        for (byte[] name : names) {
+            output.write(name);
+        }
+    }
+
+    private void writeInt(DataOutputStream output, int value) throws IOException {
+        output.writeInt(value);
+        position += 4;
+    }
+
+    private void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF8);
+        writeInt(output, bytes.length);
+        output.write(bytes);
+        position += bytes.length;
+    }
+
+    private void pad(DataOutputStream output) throws IOException {
+        long aligned = BinaryMatrixFormat.align(position);
+        while (position < aligned) {
+            output.writeByte(0);
+            position++;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: BinaryMatrixWriter <tab separated matrix> <binary matrix>");
+            System.exit(1);
+        }
+
+        ClassificationDataset dataset = new TabularMatrixLoader().load(new File(args[0]));
+        new BinaryMatrixWriter().write(dataset, new File(args[1]));
+    }
+}
@@ -0,0 +1,34 @@
+package org.isatools.classification.io;
+
+/**
+ * Layout of the binary classification tree written by BinaryTreeWriter and read by BinaryTreeReader. Nodes are stored
+ * as columns in pre-order, so every node comes after its parent, and all names are interned in one string table. All
+ * values are big endian.
+ * <pre>
+ * int    magic, version
+ * int    string count, then string count x (int length, UTF-8 bytes)
+ * int    element count
+ * int[element count]     name of each leaf element, as an index in to the string table
+ * int[element count]     occurrence count of each leaf element
+ * int    node count
+ * int[node count]        index of each node's parent, -1 for the root
+ * int[node count]        name of each node
+ * int[node count]        name of the schema selected at each node, -1 if none was
+ * int[node count]        element count of each node
+ * double[node count]     occurrence count of each node
+ * int[node count + 1]    offset of each node's leaves in the leaf table, plus the end offset
+ * int[leaf count]        leaf table, as indexes in to the elements
+ * </pre>
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public final class BinaryTreeFormat {
+
+    public static final int MAGIC = 0x43544754; // "CTGT"
+    public static final int VERSION = 1;
+
+    public static final int NONE = -1;
+
+    private BinaryTreeFormat() {
+    }
+}
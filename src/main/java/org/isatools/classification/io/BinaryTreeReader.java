@@ -0,0 +1,137 @@
+package org.isatools.classification.io;
+
+import org.isatools.classification.ClassificationNode;
+import org.isatools.classification.ClassificationSchema;
+import org.isatools.classification.Element;
+import org.isatools.classification.ElementIndex;
+import org.isatools.classification.ElementSet;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads a classification tree written by BinaryTreeWriter back in to ClassificationNodes. The leaf elements are
+ * registered in a new ElementIndex and each selected schema is represented by a ClassificationSchema holding only
+ * its name, since the rest of the dataset is not part of the tree.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public class BinaryTreeReader {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private ElementIndex elementIndex;
+
+    public ClassificationNode read(File treeFile) throws IOException {
+        return read(new FileInputStream(treeFile));
+    }
+
+    /**
+     * @param inputStream - tree to read, closed once it has been read
+     * @return root of the tree
+     */
+    public ClassificationNode read(InputStream inputStream) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(inputStream, 1 << 16));
+        try {
+            return read(input);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * @return index holding the leaf elements of the last tree read
+     */
+    public ElementIndex getElementIndex() {
+        return elementIndex;
+    }
+
+    private ClassificationNode read(DataInputStream input) throws IOException {
+        if (input.readInt() != BinaryTreeFormat.MAGIC) {
+            throw new IOException("Not a binary classification tree");
+        }
+        int version = input.readInt();
+        if (version != BinaryTreeFormat.VERSION) {
+            throw new IOException("Unsupported binary classification tree version " + version);
+        }
+
+        String[] strings = new String[input.readInt()];
+        byte[] buffer = new byte[64];
+        for (int stringId = 0; stringId < strings.length; stringId++) {
+            int length = input.readInt();
+            if (length > buffer.length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            input.readFully(buffer, 0, length);
+            strings[stringId] = new String(buffer, 0, length, UTF8);
+        }
+
+        int elementCount = input.readInt();
+        int[] elementNameIds = readInts(input, elementCount);
+        elementIndex = new ElementIndex();
+        Element[] elements = new Element[elementCount];
+        for (int position = 0; position < elementCount; position++) {
+            elements[position] = elementIndex.addElement(strings[elementNameIds[position]], input.readInt());
+        }
+
+        int nodeCount = input.readInt();
+        if (nodeCount == 0) {
+            throw new IOException("Binary classification tree has no nodes");
+        }
+        int[] parents = readInts(input, nodeCount);
+        int[] nameIds = readInts(input, nodeCount);
+        int[] schemaIds = readInts(input, nodeCount);
+        int[] elementCounts = readInts(input, nodeCount);
+        double[] occurrenceCounts = new double[nodeCount];
+        for (int nodeIndex = 0; nodeIndex < nodeCount; nodeIndex++) {
+            occurrenceCounts[nodeIndex] = input.readDouble();
+        }
+        int[] leafOffsets = readInts(input, nodeCount + 1);
+        int[] leaves = readInts(input, leafOffsets[nodeCount]);
+
+        Map<Integer, ClassificationSchema> schemas = new HashMap<Integer, ClassificationSchema>();
+        ClassificationNode[] nodes = new ClassificationNode[nodeCount];
+
+        for (int nodeIndex = 0; nodeIndex < nodeCount; nodeIndex++) {
+            ClassificationNode node = new ClassificationNode(strings[nameIds[nodeIndex]], elementCounts[nodeIndex],
+                    occurrenceCounts[nodeIndex]);
+
+            if (schemaIds[nodeIndex] != BinaryTreeFormat.NONE) {
+                ClassificationSchema schema = schemas.get(schemaIds[nodeIndex]);
+                if (schema == null) {
+                    schema = new ClassificationSchema(strings[schemaIds[nodeIndex]], elementIndex);
+                    schemas.put(schemaIds[nodeIndex], schema);
+                }
+                node.setSelectedSchema(schema);
+            }
+
+            ElementSet leafElements = new ElementSet(elementIndex);
+            for (int leaf = leafOffsets[nodeIndex]; leaf < leafOffsets[nodeIndex + 1]; leaf++) {
+                leafElements.add(elements[leaves[leaf]]);
+            }
+            node.setLeafElements(leafElements);
+
+            nodes[nodeIndex] = node;
+            if (parents[nodeIndex] != BinaryTreeFormat.NONE) {
+                nodes[parents[nodeIndex]].addChild(node);
+            }
+        }
+
+        return nodes[0];
+    }
+
+    private int[] readInts(DataInputStream input, int count) throws IOException {
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = input.readInt();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,182 @@
+package org.isatools.classification.io;
+
+import org.isatools.classification.ClassificationNode;
+import org.isatools.classification.Element;
+import org.isatools.classification.ElementSet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a classification tree in the binary format described in BinaryTreeFormat. The file holds every node with
+ * its counts, selected schema and leaf elements, so both the classification tree and the schema selection tree can
+ * be rebuilt from it.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public class BinaryTreeWriter {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private List<String> strings;
+    private Map<String, Integer> stringIds;
+
+    public void write(ClassificationNode root, File outputFile) throws IOException {
+        write(root, new FileOutputStream(outputFile));
+    }
+
+    /**
+     * @param root         - root of the tree to write
+     * @param outputStream - destination, closed once the tree has been written
+     */
+    public void write(ClassificationNode root, OutputStream outputStream) throws IOException {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(outputStream, 1 << 16));
+        try {
+            write(root, output);
+        } finally {
+            output.close();
+        }
+    }
+
+    private void write(ClassificationNode root, DataOutputStream output) throws IOException {
+        strings = new ArrayList<String>();
+        stringIds = new HashMap<String, Integer>();
+
+        List<ClassificationNode> nodes = new ArrayList<ClassificationNode>();
+        List<Integer> parents = new ArrayList<Integer>();
+        addInPreOrder(root, BinaryTreeFormat.NONE, nodes, parents);
+
+        int nodeCount = nodes.size();
+        int[] nameIds = new int[nodeCount];
+        int[] schemaIds = new int[nodeCount];
+        int[] leafOffsets = new int[nodeCount + 1];
+
+        // the element table keeps the order of the original index, so leaves are read back in the same order
+        ElementSet allLeaves = null;
+        for (ClassificationNode node : nodes) {
+            ElementSet leafElements = node.getLeafElements();
+            if (leafElements != null) {
+                if (allLeaves == null) {
+                    allLeaves = leafElements;
+                } else {
+                    allLeaves.orInPlace(leafElements);
+                }
+            }
+        }
+
+        // element ids of the original index -> position in the element table
+        Map<Integer, Integer> elementPositions = new HashMap<Integer, Integer>();
+        List<Element> elements = new ArrayList<Element>();
+        if (allLeaves != null) {
+            for (Element element : allLeaves) {
+                elementPositions.put(element.getId(), elements.size());
+                elements.add(element);
+            }
+        }
+        List<Integer> leaves = new ArrayList<Integer>();
+
+        for (int nodeIndex = 0; nodeIndex < nodeCount; nodeIndex++) {
+            ClassificationNode node = nodes.get(nodeIndex);
+            nameIds[nodeIndex] = intern(node.getName());
+            schemaIds[nodeIndex] = node.getSelectedSchema() == null
+                    ? BinaryTreeFormat.NONE : intern(node.getSelectedSchema().getName());
+
+            leafOffsets[nodeIndex] = leaves.size();
+            ElementSet leafElements = node.getLeafElements();
+            if (leafElements != null) {
+                for (Element element : leafElements) {
+                    leaves.add(elementPositions.get(element.getId()));
+                }
+            }
+        }
+        leafOffsets[nodeCount] = leaves.size();
+
+        int[] elementNameIds = new int[elements.size()];
+        for (int position = 0; position < elements.size(); position++) {
+            elementNameIds[position] = intern(elements.get(position).getName());
+        }
+
+        output.writeInt(BinaryTreeFormat.MAGIC);
+        output.writeInt(BinaryTreeFormat.VERSION);
+
+        output.writeInt(strings.size());
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(UTF8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+
+        output.writeInt(elements.size());
+        writeInts(output, elementNameIds);
+        for (Element element : elements) {
+            output.writeInt(element.getOccurrenceCount());
+        }
+
+        output.writeInt(nodeCount);
+        for (Integer parent : parents) {
+            output.writeInt(parent);
+        }
+        writeInts(output, nameIds);
+        writeInts(output, schemaIds);
+        for (ClassificationNode node : nodes) {
+            output.writeInt(node.getElementCount());
+        }
+        for (ClassificationNode node : nodes) {
+            output.writeDouble(node.getOccurrenceCount());
+        }
+        writeInts(output, leafOffsets);
+        for (Integer leaf : leaves) {
+            output.writeInt(leaf);
+        }
+    }
+
+    /**
+     * Walks the tree with an explicit stack, so that deep trees can't overflow the call stack.
+     */
+    private void addInPreOrder(ClassificationNode root, int rootParent, List<ClassificationNode> nodes, List<Integer> parents) {
+        List<ClassificationNode> stack = new ArrayList<ClassificationNode>();
+        List<Integer> stackParents = new ArrayList<Integer>();
+        stack.add(root);
+        stackParents.add(rootParent);
+
+        while (!stack.isEmpty()) {
+            ClassificationNode node = stack.remove(stack.size() - 1);
+            int parent = stackParents.remove(stackParents.size() - 1);
+
+            int nodeIndex = nodes.size();
+            nodes.add(node);
+            parents.add(parent);
+
+            // pushed in reverse so that children are visited in order
+            for (int childIndex = node.getChildren().size() - 1; childIndex >= 0; childIndex--) {
+                stack.add(node.getChildren().get(childIndex));
+                stackParents.add(nodeIndex);
+            }
+        }
+    }
+
+    private int intern(String value) {
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            id = strings.size();
+            strings.add(value);
+            stringIds.put(value, id);
+        }
+        return id;
+    }
+
+    private void writeInts(DataOutputStream output, int[] values) throws IOException {
+        for (int value : values) {
+            output.writeInt(value);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package org.isatools.classification.io;
+
+import org.isatools.classification.ClassificationDataset;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Loads a ClassificationDataset from a process matrix on disk.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public interface DatasetLoader {
+
+    ClassificationDataset load(File matrixFile) throws IOException;
+}
@@ -0,0 +1,136 @@
+package org.isatools.classification.io;
+
+import org.isatools.classification.ClassificationNode;
+import org.isatools.classification.Element;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Streams a classification tree out as JSON, each node being written as it is visited. Nodes look like
+ * <pre>
+ * {"name": "...", "elements": 26, "occurrences": 1178458.0, "schema": "...", "leaves": [...], "children": [...]}
+ * </pre>
+ * where schema is left out when no schema was selected at the node and leaves holds {"name", "occurrences"} for each
+ * element placed directly under the node. With leaves turned off the output is the schema selection tree.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public class JsonTreeWriter {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private boolean includeLeaves = true;
+
+    private Writer writer;
+
+    /**
+     * @param includeLeaves - false to write only the nodes and the schemas selected at them
+     */
+    public void setIncludeLeaves(boolean includeLeaves) {
+        this.includeLeaves = includeLeaves;
+    }
+
+    public void write(ClassificationNode root, File outputFile) throws IOException {
+        Writer output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), "UTF-8"), 1 << 16);
+        try {
+            write(root, output);
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * @param root   - root of the tree to write
+     * @param writer - destination of the JSON, flushed but not closed
+     */
+    public void write(ClassificationNode root, Writer writer) throws IOException {
+        this.writer = writer;
+        writeNode(root);
+        writer.write('\n');
+        writer.flush();
+    }
+
+    private void writeNode(ClassificationNode node) throws IOException {
+        writer.write("{\"name\":");
+        writeString(node.getName());
+        writer.write(",\"elements\":");
+        writer.write(Integer.toString(node.getElementCount()));
+        writer.write(",\"occurrences\":");
+        writer.write(Double.toString(node.getOccurrenceCount()));
+
+        if (node.getSelectedSchema() != null) {
+            writer.write(",\"schema\":");
+            writeString(node.getSelectedSchema().getName());
+        }
+
+        if (includeLeaves && node.getLeafCount() > 0) {
+            writer.write(",\"leaves\":[");
+            boolean first = true;
+            for (Element element : node.getLeafElements()) {
+                if (!first) writer.write(',');
+                first = false;
+
+                writer.write("{\"name\":");
+                writeString(element.getName());
+                writer.write(",\"occurrences\":");
+                writer.write(Integer.toString(element.getOccurrenceCount()));
+                writer.write('}');
+            }
+            writer.write(']');
+        }
+
+        if (!node.getChildren().isEmpty()) {
+            writer.write(",\"children\":[");
+            boolean first = true;
+            for (ClassificationNode child : node.getChildren()) {
+                if (!first) writer.write(',');
+                first = false;
+                writeNode(child);
+            }
+            writer.write(']');
+        }
+        writer.write('}');
+    }
+
+    /**
+     * Writes a quoted JSON string, copying the runs between characters which need escaping straight to the writer.
+     */
+    private void writeString(String value) throws IOException {
+        writer.write('"');
+        int runStart = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char character = value.charAt(i);
+            if (character == '"' || character == '\\' || character < 0x20) {
+                writer.write(value, runStart, i - runStart);
+                writer.write('\\');
+                switch (character) {
+                    case '"':
+                    case '\\':
+                        writer.write(character);
+                        break;
+                    case '\n':
+                        writer.write('n');
+                        break;
+                    case '\r':
+                        writer.write('r');
+                        break;
+                    case '\t':
+                        writer.write('t');
+                        break;
+                    default:
+                        writer.write("u00");
+                        writer.write(HEX[character >> 4]);
+                        writer.write(HEX[character & 0xF]);
+                }
+                runStart = i + 1;
+            }
+        }
+        writer.write(value, runStart, value.length() - runStart);
+        writer.write('"');
+    }
+}
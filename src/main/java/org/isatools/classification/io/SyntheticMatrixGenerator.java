@@ -0,0 +1,150 @@
+package org.isatools.classification.io;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates tab separated process matrices in the same layout as the files in CleanedData, for profiling the
+ * Classifier at scales larger than the real data. Rows are written as they are generated, so the matrix is never held
+ * in memory.
+ * <p/>
+ * Usage: SyntheticMatrixGenerator &lt;output&gt; &lt;elements&gt; &lt;schemas&gt; &lt;classifications per schema&gt;
+ * [density] [overlap rate] [duplicate rate] [zipf exponent] [seed]
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public class SyntheticMatrixGenerator {
+
+    private static final int MAX_OCCURRENCES = 1000000;
+
+    private int elementCount;
+    private int schemaCount;
+    private int classificationsPerSchema;
+
+    // probability that a schema classifies an element at all
+    private double density = 0.5;
+    // probability that a classified element is also placed in a second classification of the same schema
+    private double overlapRate = 0.0;
+    // probability that a row repeats the name of an earlier row
+    private double duplicateRate = 0.0;
+    // exponent of the Zipf distribution the occurrence counts are drawn from
+    private double zipfExponent = 1.0;
+
+    private long seed = 42;
+
+    public SyntheticMatrixGenerator(int elementCount, int schemaCount, int classificationsPerSchema) {
+        this.elementCount = elementCount;
+        this.schemaCount = schemaCount;
+        this.classificationsPerSchema = classificationsPerSchema;
+    }
+
+    public void setDensity(double density) {
+        this.density = density;
+    }
+
+    public void setOverlapRate(double overlapRate) {
+        this.overlapRate = overlapRate;
+    }
+
+    public void setDuplicateRate(double duplicateRate) {
+        this.duplicateRate = duplicateRate;
+    }
+
+    public void setZipfExponent(double zipfExponent) {
+        this.zipfExponent = zipfExponent;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public void generate(File outputFile) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), "UTF-8"), 1 << 16);
+        try {
+            generate(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    public void generate(Writer writer) throws IOException {
+        Random random = new Random(seed);
+
+        writer.write("Process Name\tNumber of occurrences");
+        for (int schema = 1; schema <= schemaCount; schema++) {
+            for (int classification = 1; classification <= classificationsPerSchema; classification++) {
+                writer.write("\tC" + schema + ":Classification " + schema + "." + classification);
+            }
+        }
+        writer.write('\n');
+
+        // one row's membership cells, reused for every row
+        char[] cells = new char[schemaCount * classificationsPerSchema];
+
+        for (int elementNumber = 0; elementNumber < elementCount; elementNumber++) {
+            int nameNumber = elementNumber > 0 && random.nextDouble() < duplicateRate
+                    ? random.nextInt(elementNumber) : elementNumber;
+
+            writer.write("process ");
+            writer.write(Integer.toString(nameNumber));
+            writer.write('\t');
+            writer.write(Integer.toString(nextOccurrenceCount(random)));
+
+            Arrays.fill(cells, '\0');
+            for (int schema = 0; schema < schemaCount; schema++) {
+                if (random.nextDouble() < density) {
+                    int offset = schema * classificationsPerSchema;
+                    int classification = random.nextInt(classificationsPerSchema);
+                    cells[offset + classification] = '1';
+                    if (classificationsPerSchema > 1 && random.nextDouble() < overlapRate) {
+                        // drawn from the other classifications, so the element is always in two
+                        int other = (classification + 1 + random.nextInt(classificationsPerSchema - 1))
+                                % classificationsPerSchema;
+                        cells[offset + other] = '1';
+                    }
+                }
+            }
+
+            for (char cell : cells) {
+                writer.write('\t');
+                if (cell != '\0') {
+                    writer.write(cell);
+                }
+            }
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * Each element is given a uniformly random rank, and its occurrence count is MAX_OCCURRENCES / rank^s, so the
+     * counts across the whole matrix follow a Zipf distribution without having to keep any state per element.
+     */
+    private int nextOccurrenceCount(Random random) {
+        int rank = 1 + random.nextInt(Math.max(1, elementCount));
+        return Math.max(1, (int) (MAX_OCCURRENCES / Math.pow(rank, zipfExponent)));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.err.println("Usage: SyntheticMatrixGenerator <output> <elements> <schemas> <classifications per schema> " +
+                    "[density] [overlap rate] [duplicate rate] [zipf exponent] [seed]");
+            System.exit(1);
+        }
+
+        SyntheticMatrixGenerator generator = new SyntheticMatrixGenerator(Integer.parseInt(args[1]),
+                Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+        if (args.length > 4) generator.setDensity(Double.parseDouble(args[4]));
+        if (args.length > 5) generator.setOverlapRate(Double.parseDouble(args[5]));
+        if (args.length > 6) generator.setDuplicateRate(Double.parseDouble(args[6]));
+        if (args.length > 7) generator.setZipfExponent(Double.parseDouble(args[7]));
+        if (args.length > 8) generator.setSeed(Long.parseLong(args[8]));
+
+        generator.generate(new File(args[0]));
+    }
+}
@@ -0,0 +1,78 @@
+package org.isatools.classification.io;
+
+import au.com.bytecode.opencsv.CSVReader;
+import org.isatools.classification.Classification;
+import org.isatools.classification.ClassificationDataset;
+import org.isatools.classification.Element;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * Loads the tab separated process matrix. The first row holds the column headers: the process name, its number of
+ * occurrences and then one "Schema:Classification" column per classification, with a 1 marking membership.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public class TabularMatrixLoader implements DatasetLoader {
+
+    public ClassificationDataset load(File matrixFile) throws IOException {
+        CSVReader processLoader = new CSVReader(new BufferedReader(new FileReader(matrixFile)), '\t');
+        try {
+            return createClassificationDataStructure(processLoader);
+        } finally {
+            processLoader.close();
+        }
+    }
+
+    /**
+     * Reads the process matrix one row at a time, turning each row straight in to an Element and its classification
+     * memberships so that the raw rows never need to be held in memory.
+     *
+     * @param processLoader - reader positioned at the column header row
+     * @return ClassificationDataset holding the loaded elements and schemas
+     * @throws IOException if the matrix can't be read
+     */
+    private ClassificationDataset createClassificationDataStructure(CSVReader processLoader) throws IOException {
+        ClassificationDataset dataset = new ClassificationDataset();
+
+        // first row is just column headers
+        String[] topRow = processLoader.readNext();
+        if (topRow == null) {
+            return dataset;
+        }
+
+        // resolve each column to its Classification once, rather than with two map lookups per cell
+        Classification[] classificationsByColumn = createClassificationCategories(dataset, topRow);
+
+        String[] columns;
+        while ((columns = processLoader.readNext()) != null) {
+            String elementName = columns[0];
+            int occurrenceCount = Integer.valueOf(columns[1]);
+
+            Element element = dataset.addElement(elementName, occurrenceCount);
+
+            int lastColumn = Math.min(columns.length, classificationsByColumn.length);
+            for (int columnNumber = 2; columnNumber < lastColumn; columnNumber++) {
+                if (columns[columnNumber].equals("1")) {
+                    classificationsByColumn[columnNumber].addElement(element);
+                }
+            }
+        }
+        return dataset;
+    }
+
+    private Classification[] createClassificationCategories(ClassificationDataset dataset, String[] topRow) {
+        Classification[] classificationsByColumn = new Classification[topRow.length];
+
+        for (int columnNumber = 2; columnNumber < topRow.length; columnNumber++) {
+            String[] classificationAndName = topRow[columnNumber].split(":");
+
+            classificationsByColumn[columnNumber] = dataset.addClassification(columnNumber,
+                    classificationAndName[0], classificationAndName[1]);
+        }
+        return classificationsByColumn;
+    }
+}
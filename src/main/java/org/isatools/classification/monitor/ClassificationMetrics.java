@@ -0,0 +1,196 @@
+package org.isatools.classification.monitor;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Registry of the counters, gauges and timers recording where a classification spends its time. Nothing is recorded
+ * unless a registry is given to the Classifier. Each run then records in to its own registry, giving the summary for
+ * that run, which is added to the Classifier's registry once the run is done, e.g. the global registry totalling
+ * every run in the JVM. The global registry is published over JMX as
+ * org.isatools.classification:type=ClassificationMetrics.
+ * <p/>
+ * A registry may instead be given a parent, which then also records everything as it is recorded. Every record then
+ * contends on the parent's meters, so runs add their totals once they are done instead.
+ * <p/>
+ * Meters are created the first time they are asked for. Anything recording on a hot path should look its meters up
+ * once and keep hold of them.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public class ClassificationMetrics {
+
+    public static final String LOAD = "dataset.load";
+    public static final String NODE_FITNESS = "fitness.node";
+    public static final String SCHEMAS_SCORED = "fitness.schemas.scored";
+    public static final String CACHED_SCHEMAS = "fitness.schemas.cached";
+    // schemas given a fitness of 0 without running the metrics, including those at pruned nodes
+    public static final String PRUNED_SCHEMAS = "fitness.schemas.pruned";
+    public static final String CLASSIFICATION = "tree.classify";
+    public static final String NODES = "tree.nodes";
+    // nodes made leaves without scoring any schemas
+    public static final String PRUNED_NODES = "tree.nodes.pruned";
+    // nodes given the schema selected in an earlier tree without scoring any schemas, see Classifier.reclassify()
+    public static final String REUSED_NODES = "tree.nodes.reused";
+    public static final String DEPTH = "tree.depth";
+    // nodes scored while looking ahead to select a schema
+    public static final String LOOKAHEAD_NODES = "tree.lookahead.nodes";
+    public static final String XML_OUTPUT = "output.xml";
+
+    private static final Logger log = Logger.getLogger(ClassificationMetrics.class.getName());
+
+    private static final String OBJECT_NAME = "org.isatools.classification:type=ClassificationMetrics";
+    private static ClassificationMetrics global;
+
+    private final ClassificationMetrics parent;
+
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<String, Timer>();
+
+    public ClassificationMetrics() {
+        this(null);
+    }
+
+    /**
+     * @param parent - registry which also records everything recorded in this one, or null
+     */
+    public ClassificationMetrics(ClassificationMetrics parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * @return registry totalling every run in the JVM, registered with the platform MBean server on first use
+     */
+    public static synchronized ClassificationMetrics getGlobal() {
+        if (global == null) {
+            global = new ClassificationMetrics();
+            registerMBean(global);
+        }
+        return global;
+    }
+
+    private static void registerMBean(ClassificationMetrics metrics) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MetricsDynamicMBean(metrics), name);
+            }
+        } catch (JMException e) {
+            log.log(Level.WARNING, "Unable to publish the classification metrics over JMX", e);
+        } catch (SecurityException e) {
+            log.log(Level.WARNING, "Unable to publish the classification metrics over JMX", e);
+        }
+    }
+
+    public Counter getCounter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            counter = new Counter(parent == null ? null : parent.getCounter(name));
+            Counter existing = counters.putIfAbsent(name, counter);
+            if (existing != null) {
+                counter = existing;
+            }
+        }
+        return counter;
+    }
+
+    public Gauge getGauge(String name) {
+        Gauge gauge = gauges.get(name);
+        if (gauge == null) {
+            gauge = new Gauge(parent == null ? null : parent.getGauge(name));
+            Gauge existing = gauges.putIfAbsent(name, gauge);
+            if (existing != null) {
+                gauge = existing;
+            }
+        }
+        return gauge;
+    }
+
+    public Timer getTimer(String name) {
+        Timer timer = timers.get(name);
+        if (timer == null) {
+            timer = new Timer(parent == null ? null : parent.getTimer(name));
+            Timer existing = timers.putIfAbsent(name, timer);
+            if (existing != null) {
+                timer = existing;
+            }
+        }
+        return timer;
+    }
+
+    /**
+     * Adds everything recorded in another registry to this one, e.g. a run's totals once the run is done.
+     *
+     * @param other - registry to add, which should no longer be recorded in to
+     */
+    public void add(ClassificationMetrics other) {
+        for (Map.Entry<String, Counter> counter : other.counters.entrySet()) {
+            getCounter(counter.getKey()).add(counter.getValue().getCount());
+        }
+        for (Map.Entry<String, Gauge> gauge : other.gauges.entrySet()) {
+            getGauge(gauge.getKey()).recordMaximum(gauge.getValue().getValue());
+        }
+        for (Map.Entry<String, Timer> timer : other.timers.entrySet()) {
+            getTimer(timer.getKey()).add(timer.getValue());
+        }
+    }
+
+    /**
+     * @return counters, by name
+     */
+    public Map<String, Counter> getCounters() {
+        return new TreeMap<String, Counter>(counters);
+    }
+
+    /**
+     * @return gauges, by name
+     */
+    public Map<String, Gauge> getGauges() {
+        return new TreeMap<String, Gauge>(gauges);
+    }
+
+    /**
+     * @return timers, by name
+     */
+    public Map<String, Timer> getTimers() {
+        return new TreeMap<String, Timer>(timers);
+    }
+
+    /**
+     * @return one line for each meter, timers first, in name order
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (Map.Entry<String, Timer> timer : getTimers().entrySet()) {
+            summary.append(timer.getKey()).append(": count=").append(timer.getValue().getCount())
+                    .append(" total=").append(formatMillis(timer.getValue().getTotalMillis()))
+                    .append(" mean=").append(formatMillis(timer.getValue().getMeanMillis()))
+                    .append(" max=").append(formatMillis(timer.getValue().getMaxMillis())).append('\n');
+        }
+        for (Map.Entry<String, Counter> counter : getCounters().entrySet()) {
+            summary.append(counter.getKey()).append(": ").append(counter.getValue().getCount()).append('\n');
+        }
+        for (Map.Entry<String, Gauge> gauge : getGauges().entrySet()) {
+            summary.append(gauge.getKey()).append(": ").append(gauge.getValue().getValue()).append('\n');
+        }
+        return summary.toString();
+    }
+
+    private static String formatMillis(double millis) {
+        return String.format("%.3fms", millis);
+    }
+
+    public String toString() {
+        return getSummary();
+    }
+}
@@ -0,0 +1,33 @@
+package org.isatools.classification.monitor;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A running total, safe to update from any thread. Every update is also applied to the parent counter, if there is one.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public class Counter {
+
+    private final AtomicLong count = new AtomicLong();
+    private final Counter parent;
+
+    Counter(Counter parent) {
+        this.parent = parent;
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long amount) {
+        count.addAndGet(amount);
+        if (parent != null) {
+            parent.add(amount);
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+}
@@ -0,0 +1,33 @@
+package org.isatools.classification.monitor;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The highest value recorded, e.g. the deepest point reached in the tree. Every value is also recorded by the parent
+ * gauge, if there is one.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public class Gauge {
+
+    private final AtomicLong maximum = new AtomicLong();
+    private final Gauge parent;
+
+    Gauge(Gauge parent) {
+        this.parent = parent;
+    }
+
+    public void recordMaximum(long value) {
+        long current = maximum.get();
+        while (value > current && !maximum.compareAndSet(current, value)) {
+            current = maximum.get();
+        }
+        if (parent != null) {
+            parent.recordMaximum(value);
+        }
+    }
+
+    public long getValue() {
+        return maximum.get();
+    }
+}
@@ -0,0 +1,110 @@
+package org.isatools.classification.monitor;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Publishes a ClassificationMetrics registry over JMX. Meters are created as a run needs them, so the attributes are
+ * read from the registry each time they are asked for: a counter or gauge appears under its own name, and a timer as
+ * name.count, name.totalMillis, name.meanMillis and name.maxMillis. The summary attribute holds the whole registry as
+ * text.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+class MetricsDynamicMBean implements DynamicMBean {
+
+    private static final String SUMMARY = "Summary";
+    private static final String[] TIMER_ATTRIBUTES = {"count", "totalMillis", "meanMillis", "maxMillis"};
+
+    private final ClassificationMetrics metrics;
+
+    MetricsDynamicMBean(ClassificationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        if (attribute.equals(SUMMARY)) {
+            return metrics.getSummary();
+        }
+
+        Counter counter = metrics.getCounters().get(attribute);
+        if (counter != null) {
+            return counter.getCount();
+        }
+        Gauge gauge = metrics.getGauges().get(attribute);
+        if (gauge != null) {
+            return gauge.getValue();
+        }
+
+        int separator = attribute.lastIndexOf('.');
+        Timer timer = separator < 0 ? null : metrics.getTimers().get(attribute.substring(0, separator));
+        if (timer != null) {
+            String property = attribute.substring(separator + 1);
+            if (property.equals("count")) {
+                return timer.getCount();
+            } else if (property.equals("totalMillis")) {
+                return timer.getTotalMillis();
+            } else if (property.equals("meanMillis")) {
+                return timer.getMeanMillis();
+            } else if (property.equals("maxMillis")) {
+                return timer.getMaxMillis();
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList values = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                values.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // left out, as required of getAttributes
+            }
+        }
+        return values;
+    }
+
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+        attributes.add(new MBeanAttributeInfo(SUMMARY, String.class.getName(), "Every meter as text", true, false, false));
+
+        for (String name : metrics.getCounters().keySet()) {
+            attributes.add(new MBeanAttributeInfo(name, Long.class.getName(), "Counter", true, false, false));
+        }
+        for (String name : metrics.getGauges().keySet()) {
+            attributes.add(new MBeanAttributeInfo(name, Long.class.getName(), "Highest value recorded", true, false, false));
+        }
+        for (Map.Entry<String, Timer> timer : metrics.getTimers().entrySet()) {
+            for (String property : TIMER_ATTRIBUTES) {
+                String type = property.equals("count") ? Long.class.getName() : Double.class.getName();
+                attributes.add(new MBeanAttributeInfo(timer.getKey() + "." + property, type, "Timer", true, false, false));
+            }
+        }
+
+        return new MBeanInfo(getClass().getName(), "Classification tree generator metrics",
+                attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, new MBeanOperationInfo[0], null);
+    }
+
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName() + " is read only");
+    }
+
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException, ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+}
@@ -0,0 +1,90 @@
+package org.isatools.classification.monitor;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Number, total and longest duration of a timed operation, safe to update from any thread. Callers take
+ * System.nanoTime() before the operation and pass the elapsed time to record(). Every duration is also recorded by
+ * the parent timer, if there is one.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public class Timer {
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final Timer parent;
+
+    Timer(Timer parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * @param startNanos - value of System.nanoTime() taken when the operation started
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public void record(long nanos) {
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+
+        long currentMax = maxNanos.get();
+        while (nanos > currentMax && !maxNanos.compareAndSet(currentMax, nanos)) {
+            currentMax = maxNanos.get();
+        }
+
+        if (parent != null) {
+            parent.record(nanos);
+        }
+    }
+
+    /**
+     * Adds the durations recorded by another timer to this one.
+     */
+    void add(Timer other) {
+        long otherCount = other.getCount();
+        if (otherCount == 0) {
+            return;
+        }
+        count.addAndGet(otherCount);
+        totalNanos.addAndGet(other.getTotalNanos());
+
+        long otherMax = other.getMaxNanos();
+        long currentMax = maxNanos.get();
+        while (otherMax > currentMax && !maxNanos.compareAndSet(currentMax, otherMax)) {
+            currentMax = maxNanos.get();
+        }
+
+        if (parent != null) {
+            parent.add(other);
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public double getTotalMillis() {
+        return totalNanos.get() / 1e6;
+    }
+
+    public double getMeanMillis() {
+        long timed = count.get();
+        return timed == 0 ? 0 : getTotalMillis() / timed;
+    }
+
+    public double getMaxMillis() {
+        return maxNanos.get() / 1e6;
+    }
+}
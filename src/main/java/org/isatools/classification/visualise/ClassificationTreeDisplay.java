@@ -0,0 +1,50 @@
+package org.isatools.classification.visualise;
+
+import org.isatools.classification.Classifier;
+
+import javax.swing.*;
+import java.io.File;
+
+/**
+ * Shows the classification and schema selection trees written by the Classifier in a pair of windows. Kept apart
+ * from the Classifier so that batch runs never load AWT, Swing or prefuse.
+ *
+ * @author Eamonn Maguire (eamonnmag@gmail.com)
+ */
+public class ClassificationTreeDisplay {
+
+    /**
+     * Opens the windows on the event dispatch thread.
+     *
+     * @param treeFile            - TreeML classification tree
+     * @param schemaSelectionFile - TreeML schema selection tree
+     */
+    public static void show(final File treeFile, final File schemaSelectionFile) {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                JFrame tree = new JFrame("Taxonomy Hierarchy");
+                ClassificationTreeViewer viewerClassification = new ClassificationTreeViewer();
+                tree.add(viewerClassification.createTreeView(treeFile.getAbsolutePath()));
+                tree.pack();
+                tree.setVisible(true);
+
+                JFrame schemaSelection = new JFrame("Classification Schemas");
+                ClassificationTreeViewer schemaSelectionViewer = new ClassificationTreeViewer(2);
+                schemaSelection.add(schemaSelectionViewer.createTreeView(schemaSelectionFile.getAbsolutePath()));
+                schemaSelection.pack();
+                schemaSelection.setVisible(true);
+            }
+        });
+    }
+
+    public static void main(String[] args) {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        Classifier classifier = args.length > 0
+                ? new Classifier(new File(args[0]), parallelism) : new Classifier(parallelism);
+        classifier.runClassification();
+
+        if (classifier.getTreeFile() != null) {
+            show(classifier.getTreeFile(), classifier.getSchemaSelectionFile());
+        }
+    }
+}
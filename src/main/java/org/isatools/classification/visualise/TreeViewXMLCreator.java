@@ -1,17 +1,27 @@
 package org.isatools.classification.visualise;
 
 import org.isatools.classification.Classification;
+import org.isatools.classification.ClassificationNode;
 import org.isatools.classification.Element;
+import org.isatools.classification.ElementSet;
 import org.isatools.classification.Statistics;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.PrintStream;
-import java.util.Collection;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
 
 /**
- * Created by the ISA team
+ * Writes a tree in the TreeML format read by prefuse. Nodes are written straight to a buffered Writer as they are
+ * added, attribute values being escaped on the way, so the size of the tree is limited only by the output.
  *
  * @author Eamonn Maguire (eamonnmag@gmail.com)
  *         <p/>
@@ -20,29 +30,82 @@ import java.util.Collection;
  */
 public class TreeViewXMLCreator {
 
-    private PrintStream printStream = null;
+    private static final Logger log = Logger.getLogger(TreeViewXMLCreator.class.getName());
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private PrintWriter printWriter = null;
     private File treeFile;
 
+    /**
+     * Starts a tree in a file named fileName.xml in java.io.tmpdir.
+     *
+     * @param fileName - name of the file, without the extension
+     * @return the file being written
+     */
     public File generateStart(String fileName) {
-        treeFile = new File(System.getProperty("java.io.tmpdir") + File.separator + fileName + ".xml");
-        System.out.println(treeFile.getAbsolutePath());
+        File file = new File(System.getProperty("java.io.tmpdir") + File.separator + fileName + ".xml");
+        log.info("Writing tree to " + file.getAbsolutePath());
 
         try {
-            printStream = new PrintStream(new FileOutputStream(treeFile));
-            printStream.println("<tree>");
-            printStream.println(getDeclaration());
+            generateStart(file);
+        } catch (IOException e) {
+            log.log(Level.SEVERE, "Unable to create " + file.getAbsolutePath(), e);
+        }
+
+        treeFile = file;
+        return file;
+    }
+
+    /**
+     * Starts a tree in the given file, which is gzip compressed if its name ends in .gz
+     *
+     * @param file - file to write
+     * @throws IOException if the file can't be created
+     */
+    public void generateStart(File file) throws IOException {
+        OutputStream outputStream = new FileOutputStream(file);
+        if (file.getName().endsWith(".gz")) {
+            outputStream = new GZIPOutputStream(outputStream, BUFFER_SIZE);
+        }
+        generateStart(outputStream);
+        treeFile = file;
+    }
 
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+    /**
+     * Starts a tree written as UTF-8 to the given stream, which is closed by closeTree()
+     *
+     * @param outputStream - stream to write
+     */
+    public void generateStart(OutputStream outputStream) {
+        try {
+            generateStart(new OutputStreamWriter(outputStream, "UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            // every JVM supports UTF-8
+            throw new IllegalStateException(e);
         }
+    }
 
-        return treeFile;
+    /**
+     * Starts a tree written to the given Writer, which is closed by closeTree()
+     *
+     * @param writer - destination of the tree
+     */
+    public void generateStart(Writer writer) {
+        treeFile = null;
+        printWriter = new PrintWriter(writer instanceof BufferedWriter ? writer : new BufferedWriter(writer, BUFFER_SIZE));
+        printWriter.println("<tree>");
+        printWriter.println(getDeclaration());
     }
 
     public void closeTree() {
-        printStream.println("</tree>");
-        if (printStream != null) {
-            printStream.close();
+        if (printWriter != null) {
+            printWriter.println("</tree>");
+            printWriter.close();
+            if (printWriter.checkError()) {
+                log.severe("Failed to write the tree" + (treeFile == null ? "" : " to " + treeFile.getAbsolutePath()));
+            }
+            printWriter = null;
         }
     }
 
@@ -58,32 +121,93 @@ public class TreeViewXMLCreator {
         addTo(classification.getName());
     }
 
-    public void addTo(Classification classification, Collection<Element> elementsInClassification) {
-        addTo(classification.getName() + "(" + elementsInClassification.size() + " e with " +
-                Statistics.getOccurrencesForElements(elementsInClassification) + " mu)");
+    public void addTo(Classification classification, ElementSet elementsInClassification) {
+        addTo(classification.getName(), elementsInClassification.size(),
+                Statistics.getOccurrencesForElements(elementsInClassification));
+    }
+
+    public void addTo(ClassificationNode node) {
+        addTo(node.getName(), node.getElementCount(), node.getOccurrenceCount());
+    }
+
+    private void addTo(String name, int elementCount, double occurrenceCount) {
+        startBranch();
+        writeEscaped(name);
+        printWriter.write('(');
+        printWriter.print(elementCount);
+        printWriter.write(" e with ");
+        printWriter.print(occurrenceCount);
+        printWriter.write(" mu)");
+        endBranchAttributes();
     }
 
     public void addTo(String classification) {
-        String classificationInfo = "<branch>" +
-                "<attribute name = \"type\" value = \"Classification\"/>" +
-                "<attribute name=\"name\" value= \"" + classification + "\"/>\n";
-        printStream.println(classificationInfo);
+        startBranch();
+        writeEscaped(classification);
+        endBranchAttributes();
     }
 
     public void closeBranch() {
-        printStream.println("</branch>");
+        printWriter.println("</branch>");
     }
 
     public void addTo(Element element) {
-        String elementInfo = "<leaf>\n" +
-                "<attribute name = \"type\" value = \"Element\"/>" +
-                "<attribute name=\"name\" value= \"" + element.getName() + " #" + element.getOccurrenceCount() + "\"/>" +
-                "\n</leaf>";
-        printStream.println(elementInfo);
+        printWriter.write("<leaf>\n<attribute name = \"type\" value = \"Element\"/><attribute name=\"name\" value= \"");
+        writeEscaped(element.getName());
+        printWriter.write(" #");
+        printWriter.print(element.getOccurrenceCount());
+        printWriter.write("\"/>\n</leaf>");
+        printWriter.println();
     }
 
     public File getTreeFile() {
         return treeFile;
     }
 
+    private void startBranch() {
+        printWriter.write("<branch><attribute name = \"type\" value = \"Classification\"/><attribute name=\"name\" value= \"");
+    }
+
+    private void endBranchAttributes() {
+        printWriter.write("\"/>\n");
+        printWriter.println();
+    }
+
+    /**
+     * Writes value as XML attribute content, copying the runs between characters which need escaping straight
+     * through to the writer.
+     */
+    private void writeEscaped(String value) {
+        int runStart = 0;
+        for (int i = 0; i < value.length(); i++) {
+            String replacement = getEscape(value.charAt(i));
+            if (replacement != null) {
+                printWriter.write(value, runStart, i - runStart);
+                printWriter.write(replacement);
+                runStart = i + 1;
+            }
+        }
+        printWriter.write(value, runStart, value.length() - runStart);
+    }
+
+    private static String getEscape(char character) {
+        switch (character) {
+            case '&':
+                return "&amp;";
+            case '<':
+                return "&lt;";
+            case '>':
+                return "&gt;";
+            case '"':
+                return "&quot;";
+            case '\n':
+                return "&#10;";
+            case '\r':
+                return "&#13;";
+            case '\t':
+                return "&#9;";
+            default:
+                return null;
+        }
+    }
 }
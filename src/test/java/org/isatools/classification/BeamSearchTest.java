@@ -0,0 +1,84 @@
+package org.isatools.classification;
+
+import org.isatools.classification.fitness.FitnessRanking;
+import org.isatools.classification.fitness.MetricType;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+import static junit.framework.Assert.assertEquals;
+
+public class BeamSearchTest {
+
+    @Test
+    public void testWithoutLookaheadSelectsGreedily() {
+        ClassificationDataset dataset = ClassifierTest.createDataset();
+        String greedyTree = ClassifierTest.describe(new Classifier(null, 1).classify(dataset));
+
+        Classifier narrowClassifier = new Classifier(null, 1);
+        narrowClassifier.setBeamSearch(1, 3);
+        assertEquals(greedyTree, ClassifierTest.describe(narrowClassifier.classify(dataset)));
+
+        Classifier shallowClassifier = new Classifier(null, 1);
+        shallowClassifier.setBeamSearch(3, 0);
+        assertEquals(greedyTree, ClassifierTest.describe(shallowClassifier.classify(dataset)));
+
+        // the Classifier drops a search which can't look ahead, so check the search itself selects greedily too
+        ClassificationContext context = new ClassificationContext(dataset, new HashMap<MetricType, Double>(), null,
+                null);
+        FitnessRanking ranking = context.getFitnessCalculator().rankSchemas(context.getClassificationSchemaPool(),
+                context.getRootCounts());
+        ClassificationSchema selectedSchema = new BeamSearch(3, 0, null).selectSchema(context, ranking,
+                context.getClassificationSchemaPool(), new HashSet<ClassificationSchema>(), context.getRootCounts());
+        assertEquals(ranking.getFittest().getSchema(), selectedSchema);
+    }
+
+    @Test
+    public void testParallelSearchMatchesSerialSearch() {
+        ClassificationDataset dataset = ClassifierTest.createDataset();
+
+        Classifier serialClassifier = new Classifier(null, 1);
+        serialClassifier.setBeamSearch(2, 2);
+        Classifier parallelClassifier = new Classifier(null, 4);
+        parallelClassifier.setBeamSearch(2, 2);
+        try {
+            assertEquals(ClassifierTest.describe(serialClassifier.classify(dataset)),
+                    ClassifierTest.describe(parallelClassifier.classify(dataset)));
+        } finally {
+            parallelClassifier.shutdown();
+        }
+    }
+
+    @Test
+    public void testLookaheadSelectsSchemaWhichSplitsBetterBelow() {
+        // S0 is the fittest schema at the root, just ahead of S1, but S1 leaves classifications which the other
+        // schemas then divide better than they can divide those S0 leaves
+        int[][] classifications = new int[][]{{0, 0, 0}, {1, 1, 0}, {0, 1, 1}, {1, 0, 0}, {0, 1, 0}, {1, 0, 0},
+                {1, 2, 0}, {0, 2, 1}, {1, 1, 0}, {1, 0, 0}};
+        int[] occurrenceCounts = new int[]{1, 2, 1, 1, 2, 3, 3, 3, 1, 2};
+
+        ClassificationDataset dataset = new ClassificationDataset();
+        Classification[][] schemas = new Classification[][]{
+                new Classification[2], new Classification[3], new Classification[2]};
+        int columnNumber = 2;
+        for (int schema = 0; schema < schemas.length; schema++) {
+            for (int classification = 0; classification < schemas[schema].length; classification++) {
+                schemas[schema][classification] = dataset.addClassification(columnNumber++, "S" + schema,
+                        "Classification " + schema + "." + classification);
+            }
+        }
+        for (int elementNumber = 0; elementNumber < classifications.length; elementNumber++) {
+            Element element = dataset.addElement("process " + elementNumber, occurrenceCounts[elementNumber]);
+            for (int schema = 0; schema < schemas.length; schema++) {
+                schemas[schema][classifications[elementNumber][schema]].addElement(element);
+            }
+        }
+
+        assertEquals("S0", new Classifier(null, 1).classify(dataset).getSelectedSchema().getName());
+
+        Classifier lookaheadClassifier = new Classifier(null, 1);
+        lookaheadClassifier.setBeamSearch(3, 1);
+        assertEquals("S1", lookaheadClassifier.classify(dataset).getSelectedSchema().getName());
+    }
+}
@@ -0,0 +1,141 @@
+package org.isatools.classification;
+
+import org.isatools.classification.fitness.MetricType;
+import org.isatools.classification.io.BinaryMatrixWriter;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class ClassificationServiceTest {
+
+    private ClassificationService service;
+
+    @After
+    public void shutdown() {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void testDatasetIsReusedUntilFileChanges() throws IOException {
+        service = new ClassificationService(1, 1, 1);
+        File matrixFile = writeMatrix(10);
+
+        ClassificationDataset dataset = service.getDataset(matrixFile);
+        assertEquals(10, dataset.getElementCount());
+        assertSame(dataset, service.getDataset(matrixFile));
+
+        writeMatrix(matrixFile, 20);
+        assertTrue(matrixFile.setLastModified(matrixFile.lastModified() + 2000));
+
+        ClassificationDataset reloaded = service.getDataset(matrixFile);
+        assertNotSame(dataset, reloaded);
+        assertEquals(20, reloaded.getElementCount());
+        assertEquals(1, service.getDatasetCount());
+    }
+
+    @Test
+    public void testFailedLoadIsNotHeld() throws IOException {
+        service = new ClassificationService(1, 1, 1);
+        File matrixFile = File.createTempFile("classification-matrix", ".ctgb");
+        matrixFile.deleteOnExit();
+        assertTrue(matrixFile.delete());
+
+        try {
+            service.getDataset(matrixFile);
+            fail("Loaded a missing file");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(0, service.getDatasetCount());
+
+        writeMatrix(matrixFile, 10);
+        assertEquals(10, service.getDataset(matrixFile).getElementCount());
+        assertEquals(1, service.getDatasetCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedDatasetIsEvicted() throws IOException {
+        service = new ClassificationService(1, 1, 1, 2);
+        File firstFile = writeMatrix(10);
+        File secondFile = writeMatrix(20);
+        File thirdFile = writeMatrix(30);
+
+        ClassificationDataset first = service.getDataset(firstFile);
+        ClassificationDataset second = service.getDataset(secondFile);
+        assertSame(first, service.getDataset(firstFile));
+
+        service.getDataset(thirdFile);
+        assertEquals(2, service.getDatasetCount());
+        assertSame(first, service.getDataset(firstFile));
+        assertNotSame(second, service.getDataset(secondFile));
+    }
+
+    @Test
+    public void testFullQueueRejectsJobs() throws Exception {
+        service = new ClassificationService(1, 1, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        // holds the only worker until released
+        ClassificationDataset blockingDataset = addElements(new ClassificationDataset() {
+            public ElementIndex getElementIndex() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getElementIndex();
+            }
+        }, 10);
+
+        Future<ClassificationNode> running = service.submit(blockingDataset, new HashMap<MetricType, Double>());
+        started.await();
+        Future<ClassificationNode> queued = service.submit(addElements(new ClassificationDataset(), 10),
+                new HashMap<MetricType, Double>());
+        try {
+            service.submit(addElements(new ClassificationDataset(), 10), new HashMap<MetricType, Double>());
+            fail("Submitted to a full queue");
+        } catch (RejectedExecutionException e) {
+            // expected
+        } finally {
+            release.countDown();
+        }
+        running.get();
+        queued.get();
+    }
+
+    private File writeMatrix(int elementCount) throws IOException {
+        File matrixFile = File.createTempFile("classification-matrix", ".ctgb");
+        matrixFile.deleteOnExit();
+        writeMatrix(matrixFile, elementCount);
+        return matrixFile;
+    }
+
+    private void writeMatrix(File matrixFile, int elementCount) throws IOException {
+        new BinaryMatrixWriter().write(addElements(new ClassificationDataset(), elementCount), matrixFile);
+    }
+
+    private ClassificationDataset addElements(ClassificationDataset dataset, int elementCount) {
+        Classification onMaterial = dataset.addClassification(2, "C1", "On Material");
+        Classification onData = dataset.addClassification(3, "C1", "On Data");
+        for (int elementNumber = 0; elementNumber < elementCount; elementNumber++) {
+            Element element = dataset.addElement("process " + elementNumber, elementNumber + 1);
+            (elementNumber % 2 == 0 ? onMaterial : onData).addElement(element);
+        }
+        return dataset;
+    }
+}
@@ -0,0 +1,160 @@
+package org.isatools.classification;
+
+import org.isatools.classification.fitness.FitnessCache;
+import org.isatools.classification.fitness.MetricType;
+import org.isatools.classification.io.BinaryMatrixWriter;
+import org.isatools.classification.monitor.ClassificationMetrics;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+public class ClassifierTest {
+
+    @Test
+    public void testParallelTreeMatchesSerialTree() {
+        ClassificationDataset dataset = createDataset();
+
+        Classifier serialClassifier = new Classifier(null, 1);
+        Classifier parallelClassifier = new Classifier(null, 4);
+        try {
+            assertEquals(describe(serialClassifier.classify(dataset)), describe(parallelClassifier.classify(dataset)));
+        } finally {
+            parallelClassifier.shutdown();
+        }
+    }
+
+    @Test
+    public void testSweptTreesMatchTreesClassifiedAlone() {
+        ClassificationDataset dataset = createDataset();
+
+        List<Map<MetricType, Double>> weightings = new ArrayList<Map<MetricType, Double>>();
+        weightings.add(new HashMap<MetricType, Double>());
+        for (MetricType metricType : MetricType.values()) {
+            Map<MetricType, Double> weighting = new HashMap<MetricType, Double>();
+            weighting.put(metricType, 3.0);
+            weightings.add(weighting);
+        }
+
+        Classifier classifier = new Classifier(null, 1);
+        FitnessCache fitnessCache = new FitnessCache(1 << 24);
+        List<ClassificationNode> roots = classifier.sweepWeights(dataset, weightings, fitnessCache);
+
+        assertEquals(weightings.size(), roots.size());
+        for (int weighting = 0; weighting < weightings.size(); weighting++) {
+            assertEquals(describe(classifier.classify(dataset, weightings.get(weighting))),
+                    describe(roots.get(weighting)));
+        }
+        assertTrue(fitnessCache.getHits() > 0);
+    }
+
+    @Test
+    public void testOutOfCoreTreeMatchesInHeapTree() throws IOException {
+        ClassificationDataset dataset = createDataset();
+        File matrixFile = File.createTempFile("classification-matrix", ".ctgb");
+        matrixFile.deleteOnExit();
+        new BinaryMatrixWriter().write(dataset, matrixFile);
+
+        Classifier classifier = new Classifier(null, 1);
+        ClassificationDataset outOfCore = Classifier.loadDataset(matrixFile, true);
+        assertEquals(describe(classifier.classify(Classifier.loadDataset(matrixFile))),
+                describe(classifier.classify(outOfCore)));
+        assertTrue(RowDiff.compare(Classifier.loadDataset(matrixFile), outOfCore).isEmpty());
+    }
+
+    @Test
+    public void testMetricsAreOnlyRecordedWhenEnabled() {
+        ClassificationDataset dataset = createDataset();
+
+        ClassificationContext context = new ClassificationContext(dataset, new HashMap<MetricType, Double>(), null,
+                new FitnessCache(1 << 20));
+        Classifier classifier = new Classifier(null, 1);
+        classifier.classify(context);
+        assertNull(context.getMetrics());
+
+        ClassificationMetrics total = new ClassificationMetrics();
+        classifier.setMetrics(total);
+        classifier.classify(dataset);
+        long nodes = total.getCounter(ClassificationMetrics.NODES).getCount();
+        assertTrue(nodes > 0);
+        assertEquals(1, total.getTimer(ClassificationMetrics.CLASSIFICATION).getCount());
+
+        classifier.classify(dataset);
+        assertEquals(2 * nodes, total.getCounter(ClassificationMetrics.NODES).getCount());
+    }
+
+    static ClassificationDataset createDataset() {
+        return createDataset(-1, false);
+    }
+
+    /**
+     * @param changedElement - element whose memberships are changed, or -1
+     * @param addAndRemove   - true to leave out element 42 and add another at the end
+     */
+    static ClassificationDataset createDataset(int changedElement, boolean addAndRemove) {
+        ClassificationDataset dataset = new ClassificationDataset();
+
+        int columnNumber = 2;
+        Classification[][] schemas = new Classification[6][];
+        for (int schema = 0; schema < schemas.length; schema++) {
+            schemas[schema] = new Classification[2 + schema];
+            for (int classification = 0; classification < schemas[schema].length; classification++) {
+                schemas[schema][classification] = dataset.addClassification(columnNumber++, "C" + schema,
+                        "Classification " + schema + "." + classification);
+            }
+        }
+
+        Random random = new Random(5);
+        for (int elementNumber = 0; elementNumber <= 1000; elementNumber++) {
+            int occurrenceCount = 1 + random.nextInt(1000);
+            int[] memberships = new int[schemas.length];
+            for (int schema = 0; schema < schemas.length; schema++) {
+                memberships[schema] = random.nextInt(schemas[schema].length + 1) - 1;
+            }
+            if (elementNumber == changedElement) {
+                memberships[0] = memberships[0] == 0 ? 1 : 0;
+            }
+            if (addAndRemove ? elementNumber == 42 : elementNumber == 1000) {
+                continue;
+            }
+
+            Element element = dataset.addElement("process " + elementNumber, occurrenceCount);
+            for (int schema = 0; schema < schemas.length; schema++) {
+                if (memberships[schema] >= 0) {
+                    schemas[schema][memberships[schema]].addElement(element);
+                }
+            }
+        }
+        return dataset;
+    }
+
+    /**
+     * @return the names, counts, selected schemas and leaves of every node beneath the given one
+     */
+    static String describe(ClassificationNode node) {
+        StringBuilder description = new StringBuilder(node.getName()).append(' ').append(node.getElementCount())
+                .append(' ').append(node.getOccurrenceCount());
+        if (node.getSelectedSchema() != null) {
+            description.append(' ').append(node.getSelectedSchema().getName());
+        }
+        if (node.getLeafElements() != null) {
+            for (Element element : node.getLeafElements()) {
+                description.append(' ').append(element.getName());
+            }
+        }
+        description.append(" (");
+        for (ClassificationNode child : node.getChildren()) {
+            description.append(describe(child));
+        }
+        return description.append(')').toString();
+    }
+}
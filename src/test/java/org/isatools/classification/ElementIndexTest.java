@@ -0,0 +1,30 @@
+package org.isatools.classification;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+
+public class ElementIndexTest {
+
+    @Test
+    public void testNamesAreStoredOnce() {
+        ElementIndex index = new ElementIndex();
+
+        for (int elementNumber = 0; elementNumber < 1000; elementNumber++) {
+            // every name is used by two elements
+            index.addElement("procédé " + (elementNumber % 500), elementNumber);
+        }
+
+        assertEquals(1000, index.size());
+        assertEquals(500, index.getNameCount());
+        assertEquals(1000, index.getAllElements().size());
+
+        Element element = index.getElement(742);
+        assertEquals("procédé 242", element.getName());
+        assertEquals(742, element.getOccurrenceCount());
+        assertEquals(index.getElement(742), element);
+        assertFalse(index.getElement(242).equals(element));
+        assertEquals(element.getName(), index.getElement(242).getName());
+    }
+}
@@ -0,0 +1,66 @@
+package org.isatools.classification;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class ElementSetTest {
+
+    @Test
+    public void testSetOperations() {
+        ElementIndex index = new ElementIndex();
+        ElementSet evens = new ElementSet(index);
+        ElementSet lowNumbers = new ElementSet(index);
+
+        for (int elementNumber = 0; elementNumber < 200; elementNumber++) {
+            Element element = index.addElement("element " + elementNumber, elementNumber);
+            if (elementNumber % 2 == 0) evens.add(element);
+            if (elementNumber < 100) lowNumbers.add(element);
+        }
+
+        assertEquals("The set size was different to the expected value", 100, evens.size());
+        assertEquals("The intersection size was different to the expected value", 50, evens.and(lowNumbers).size());
+        assertEquals("The intersection count was different to the expected value", 50, evens.andCardinality(lowNumbers));
+        assertEquals("The difference size was different to the expected value", 50, evens.andNot(lowNumbers).size());
+        assertEquals("The union size was different to the expected value", 150, evens.or(lowNumbers).size());
+
+        // sum of the even numbers below 100
+        assertEquals("The occurrence count was different to the expected value", 2450, evens.andOccurrences(lowNumbers));
+
+        assertTrue(evens.contains(index.getElement(198)));
+        assertFalse(evens.contains(index.getElement(199)));
+        assertTrue(lowNumbers.containsAll(evens.and(lowNumbers)));
+        assertFalse(lowNumbers.containsAll(evens));
+        assertTrue(evens.intersects(lowNumbers));
+        assertFalse(evens.andNot(lowNumbers).intersects(lowNumbers));
+
+        int lastId = -1;
+        for (Element element : evens.andNot(lowNumbers)) {
+            assertTrue("Elements should be iterated in id order", element.getId() > lastId);
+            lastId = element.getId();
+        }
+        assertEquals(198, lastId);
+    }
+
+    @Test
+    public void testFingerprintIgnoresCapacity() {
+        ElementIndex index = new ElementIndex();
+        for (int elementNumber = 0; elementNumber < 200; elementNumber++) {
+            index.addElement("element " + elementNumber, 1);
+        }
+
+        ElementSet small = new ElementSet(index, new long[1]);
+        ElementSet large = new ElementSet(index);
+        small.add(index.getElement(3));
+        large.add(index.getElement(3));
+
+        assertTrue(small.sameElements(large));
+        assertEquals(small.fingerprint(), large.fingerprint());
+
+        large.add(index.getElement(150));
+        assertFalse(small.sameElements(large));
+        assertFalse("Adding an element should change the fingerprint", small.fingerprint() == large.fingerprint());
+    }
+}
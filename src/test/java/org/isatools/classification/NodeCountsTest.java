@@ -0,0 +1,102 @@
+package org.isatools.classification;
+
+import org.isatools.classification.io.BinaryMatrixLoader;
+import org.isatools.classification.io.BinaryMatrixWriter;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class NodeCountsTest {
+
+    @Test
+    public void testDerivedCountsMatchDirectCounts() {
+        ClassificationDataset dataset = createDataset();
+        Classification[] classifications = dataset.getClassifications().toArray(new Classification[4]);
+
+        NodeCounts root = new NodeCounts(dataset, dataset.getClassifiedElements());
+
+        // a large child is derived by removing elements, a small one by counting them
+        ElementSet largeChild = root.getElements().andNot(classifications[0].getElements().and(classifications[2].getElements()));
+        ElementSet smallChild = classifications[1].getElements().and(classifications[3].getElements());
+
+        for (ElementSet childElements : new ElementSet[]{largeChild, smallChild}) {
+            NodeCounts derived = root.deriveChild(childElements);
+            NodeCounts direct = new NodeCounts(dataset, childElements);
+
+            assertEquals(direct.getElementCount(), derived.getElementCount());
+            assertEquals(childElements.getOccurrences(), derived.getOccurrences());
+            assertEquals(direct.getOccurrences(), derived.getOccurrences());
+
+            for (Classification classification : classifications) {
+                assertEquals(classification.getElements().andCardinality(childElements), derived.getCount(classification));
+                assertEquals(classification.getElements().andOccurrences(childElements), derived.getOccurrences(classification));
+            }
+
+            for (ClassificationSchema schema : dataset.getSchemas()) {
+                assertEquals(schema.getElements().andCardinality(childElements), derived.getCoveredCount(schema));
+                assertEquals(schema.getElements().andOccurrences(childElements), derived.getCoveredOccurrences(schema));
+            }
+        }
+    }
+
+    @Test
+    public void testOutOfCoreCountsMatchInHeapCounts() throws IOException {
+        ClassificationDataset dataset = createDataset();
+        File matrixFile = File.createTempFile("classification-matrix", ".ctgb");
+        matrixFile.deleteOnExit();
+        new BinaryMatrixWriter().write(dataset, matrixFile);
+        ClassificationDataset outOfCore = new BinaryMatrixLoader(true).load(matrixFile);
+        assertTrue(outOfCore.isOutOfCore());
+
+        NodeCounts root = new NodeCounts(dataset, dataset.getClassifiedElements());
+        NodeCounts mappedRoot = new NodeCounts(outOfCore, outOfCore.getClassifiedElements());
+        assertCountsEqual(dataset, root, outOfCore, mappedRoot);
+
+        // a large child is derived by removing elements, a small one by counting them
+        ElementSet largeChild = root.getElements().andNot(dataset.getClassification(5).getElements());
+        ElementSet smallChild = dataset.getClassification(2).getElements().and(
+                dataset.getClassification(5).getElements());
+        for (ElementSet childElements : new ElementSet[]{largeChild, smallChild}) {
+            ElementSet mappedElements = ElementSet.fromIds(outOfCore.getElementIndex(), childElements.toIds());
+            assertCountsEqual(dataset, root.deriveChild(childElements), outOfCore,
+                    mappedRoot.deriveChild(mappedElements));
+        }
+    }
+
+    private void assertCountsEqual(ClassificationDataset dataset, NodeCounts counts,
+                                   ClassificationDataset outOfCore, NodeCounts mappedCounts) {
+        assertEquals(counts.getElementCount(), mappedCounts.getElementCount());
+        assertEquals(counts.getOccurrences(), mappedCounts.getOccurrences());
+        for (int columnNumber = 2; columnNumber <= 5; columnNumber++) {
+            assertEquals(counts.getCount(dataset.getClassification(columnNumber)),
+                    mappedCounts.getCount(outOfCore.getClassification(columnNumber)));
+            assertEquals(counts.getOccurrences(dataset.getClassification(columnNumber)),
+                    mappedCounts.getOccurrences(outOfCore.getClassification(columnNumber)));
+            assertEquals(counts.getCoveredCount(dataset.getClassificationSchemas().get(columnNumber)),
+                    mappedCounts.getCoveredCount(outOfCore.getClassificationSchemas().get(columnNumber)));
+            assertEquals(counts.getCoveredOccurrences(dataset.getClassificationSchemas().get(columnNumber)),
+                    mappedCounts.getCoveredOccurrences(outOfCore.getClassificationSchemas().get(columnNumber)));
+        }
+    }
+
+    private ClassificationDataset createDataset() {
+        ClassificationDataset dataset = new ClassificationDataset();
+        Classification[] classifications = new Classification[]{
+                dataset.addClassification(2, "C1", "A"), dataset.addClassification(3, "C1", "B"),
+                dataset.addClassification(4, "C2", "C"), dataset.addClassification(5, "C2", "D")};
+
+        Random random = new Random(7);
+        for (int elementNumber = 0; elementNumber < 500; elementNumber++) {
+            Element element = dataset.addElement("process " + elementNumber, 1 + random.nextInt(100));
+            for (Classification classification : classifications) {
+                if (random.nextDouble() < 0.4) classification.addElement(element);
+            }
+        }
+        return dataset;
+    }
+}
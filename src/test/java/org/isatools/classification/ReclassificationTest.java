@@ -0,0 +1,46 @@
+package org.isatools.classification;
+
+import org.isatools.classification.fitness.FitnessCache;
+import org.isatools.classification.fitness.MetricType;
+import org.isatools.classification.io.BinaryTreeReader;
+import org.isatools.classification.io.BinaryTreeWriter;
+import org.isatools.classification.monitor.ClassificationMetrics;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class ReclassificationTest {
+
+    @Test
+    public void testReclassifiedTreeMatchesFullClassification() throws IOException {
+        Classifier classifier = new Classifier(null, 1);
+
+        ClassificationNode previousRoot = classifier.classify(ClassifierTest.createDataset());
+        ByteArrayOutputStream previousTree = new ByteArrayOutputStream();
+        new BinaryTreeWriter().write(previousRoot, previousTree);
+
+        // element 17 is re-annotated, 42 removed and a new one added
+        ClassificationDataset dataset = ClassifierTest.createDataset(17, true);
+        RowDiff diff = RowDiff.compare(ClassifierTest.createDataset(), dataset);
+        assertEquals(1, diff.getAddedRows().size());
+        assertEquals(1, diff.getRemovedRows().size());
+        assertEquals(1, diff.getChangedRows().size());
+        assertTrue(diff.getChangedRows().contains("process 17"));
+
+        ClassificationContext context = new ClassificationContext(dataset, new HashMap<MetricType, Double>(), null,
+                new FitnessCache(1 << 20), new ClassificationMetrics());
+        ClassificationNode reclassified = classifier.reclassify(context,
+                new BinaryTreeReader().read(new ByteArrayInputStream(previousTree.toByteArray())), diff);
+
+        assertEquals(ClassifierTest.describe(classifier.classify(dataset)), ClassifierTest.describe(reclassified));
+        long reusedNodes = context.getMetrics().getCounter(ClassificationMetrics.REUSED_NODES).getCount();
+        assertTrue(reusedNodes > 0);
+        assertTrue(reusedNodes < context.getMetrics().getCounter(ClassificationMetrics.NODES).getCount());
+    }
+}
@@ -0,0 +1,114 @@
+package org.isatools.classification.fitness;
+
+import org.isatools.classification.ClassificationSchema;
+import org.isatools.classification.ElementIndex;
+import org.isatools.classification.ElementSet;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+public class FitnessCacheTest {
+
+    private ElementIndex index = createIndex();
+    private ClassificationSchema schema = new ClassificationSchema("C1", index);
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() {
+        FitnessCache sizingCache = new FitnessCache(Long.MAX_VALUE);
+        sizingCache.put(schema, elements(0), new FitnessResult(schema));
+        // room for two entries of one result each, but not three
+        FitnessCache cache = new FitnessCache(sizingCache.getBytesHeld() * 2);
+
+        FitnessResult first = new FitnessResult(schema, 1);
+        cache.put(schema, elements(0), first);
+        cache.put(schema, elements(1), new FitnessResult(schema, 2));
+        assertSame(first, cache.get(schema, elements(0)));
+
+        cache.put(schema, elements(2), new FitnessResult(schema, 3));
+
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get(schema, elements(1)));
+        assertSame(first, cache.get(schema, elements(0)));
+        assertNotNull(cache.get(schema, elements(2)));
+        assertTrue(cache.getBytesHeld() <= sizingCache.getBytesHeld() * 2);
+    }
+
+    @Test
+    public void testResultsCountTowardsBudget() {
+        FitnessCache cache = new FitnessCache(Long.MAX_VALUE);
+        cache.put(schema, elements(0), new FitnessResult(schema));
+        long oneResult = cache.getBytesHeld();
+
+        ClassificationSchema otherSchema = new ClassificationSchema("C2", index);
+        cache.put(otherSchema, elements(0), new FitnessResult(otherSchema));
+        assertTrue(cache.getBytesHeld() > oneResult);
+
+        // replacing a result doesn't add to the size
+        long twoResults = cache.getBytesHeld();
+        cache.put(otherSchema, elements(0), new FitnessResult(otherSchema, 1));
+        assertEquals(twoResults, cache.getBytesHeld());
+
+        // an entry whose results outgrow the budget pushes out the others
+        FitnessCache boundedCache = new FitnessCache(oneResult * 2);
+        boundedCache.put(schema, elements(1), new FitnessResult(schema));
+        for (int schemaNumber = 0; schemaNumber < 3; schemaNumber++) {
+            ClassificationSchema addedSchema = new ClassificationSchema("S" + schemaNumber, index);
+            boundedCache.put(addedSchema, elements(0), new FitnessResult(addedSchema));
+        }
+        assertNull(boundedCache.get(schema, elements(1)));
+    }
+
+    @Test
+    public void testEntryJustAddedIsNeverEvicted() {
+        FitnessCache cache = new FitnessCache(1);
+        FitnessResult result = new FitnessResult(schema);
+
+        cache.put(schema, elements(0), result);
+        assertSame(result, cache.get(schema, elements(0)));
+        assertTrue(cache.getBytesHeld() > 1);
+
+        cache.put(schema, elements(1), new FitnessResult(schema));
+        assertNull(cache.get(schema, elements(0)));
+        assertNotNull(cache.get(schema, elements(1)));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void testFingerprintCollisionsAreToldApart() {
+        // the fingerprint of a set whose only word is word 0 is a mix of that word, and for word 1 alone it is a mix
+        // of the word xor 0xC2B2AE3D27D4EB4F, so these two different sets have the same fingerprint
+        ElementSet lowElements = new ElementSet(index, new long[]{1L ^ 0xC2B2AE3D27D4EB4FL, 0});
+        ElementSet highElements = new ElementSet(index, new long[]{0, 1L});
+        assertEquals(lowElements.fingerprint(), highElements.fingerprint());
+        assertFalse(lowElements.sameElements(highElements));
+
+        FitnessCache cache = new FitnessCache(Long.MAX_VALUE);
+        FitnessResult lowResult = new FitnessResult(schema, 1);
+        cache.put(schema, lowElements, lowResult);
+        assertNull(cache.get(schema, highElements));
+
+        FitnessResult highResult = new FitnessResult(schema, 2);
+        cache.put(schema, highElements, highResult);
+        assertSame(lowResult, cache.get(schema, lowElements));
+        assertSame(highResult, cache.get(schema, highElements));
+    }
+
+    private ElementSet elements(int elementId) {
+        ElementSet elements = new ElementSet(index);
+        elements.add(index.getElement(elementId));
+        return elements;
+    }
+
+    private static ElementIndex createIndex() {
+        ElementIndex index = new ElementIndex();
+        for (int elementNumber = 0; elementNumber < 128; elementNumber++) {
+            index.addElement("process " + elementNumber, 1);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,44 @@
+package org.isatools.classification.fitness;
+
+import org.isatools.classification.ClassificationSchema;
+import org.isatools.classification.ElementIndex;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+
+public class FitnessRankingTest {
+
+    @Test
+    public void testFittestMatchesSortedResults() {
+        ElementIndex index = new ElementIndex();
+        Random random = new Random(7);
+
+        List<FitnessResult> results = new ArrayList<FitnessResult>();
+        for (int schemaNumber = 0; schemaNumber < 40; schemaNumber++) {
+            // few distinct values, so that there are plenty of ties
+            results.add(new FitnessResult(new ClassificationSchema("C" + schemaNumber, index), random.nextInt(5)));
+        }
+        FitnessRanking ranking = new FitnessRanking(results);
+
+        List<FitnessResult> expected = new ArrayList<FitnessResult>();
+        for (FitnessResult result : ranking.getResults()) {
+            if (result.getFitness() != 0) {
+                expected.add(result);
+            }
+        }
+
+        assertSame(ranking.getResults().get(0), ranking.getFittest());
+        assertEquals(expected.subList(0, 1), ranking.getFittest(1, null, null));
+        assertEquals(expected.subList(0, 10), ranking.getFittest(10, null, null));
+        assertEquals(expected, ranking.getFittest(100, null, null));
+
+        List<ClassificationSchema> excluded = Collections.singletonList(expected.get(0).getSchema());
+        assertSame(expected.get(1).getSchema(), ranking.selectFittestSchema(null, excluded));
+    }
+}
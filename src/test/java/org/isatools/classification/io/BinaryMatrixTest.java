@@ -0,0 +1,77 @@
+package org.isatools.classification.io;
+
+import org.isatools.classification.Classification;
+import org.isatools.classification.ClassificationDataset;
+import org.isatools.classification.Element;
+import org.isatools.classification.ElementSet;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class BinaryMatrixTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        ClassificationDataset dataset = new ClassificationDataset();
+        Classification onMaterial = dataset.addClassification(2, "C1", "On Material");
+        Classification onData = dataset.addClassification(3, "C1", "On Data");
+        Classification inVivo = dataset.addClassification(4, "C6", "In Vivo");
+
+        for (int elementNumber = 0; elementNumber < 150; elementNumber++) {
+            Element element = dataset.addElement("process é " + elementNumber, elementNumber * 3);
+            if (elementNumber % 2 == 0) onMaterial.addElement(element);
+            if (elementNumber % 3 == 0) onData.addElement(element);
+            if (elementNumber > 140) inVivo.addElement(element);
+        }
+
+        File matrixFile = File.createTempFile("classification-matrix", ".ctgb");
+        matrixFile.deleteOnExit();
+        new BinaryMatrixWriter().write(dataset, matrixFile);
+
+        assertTrue(BinaryMatrixFormat.isBinaryMatrix(matrixFile));
+
+        ClassificationDataset loaded = new BinaryMatrixLoader().load(matrixFile);
+
+        assertEquals(150, loaded.getElementIndex().size());
+        assertEquals(2, loaded.getSchemas().size());
+        assertEquals("process é 149", loaded.getElementIndex().getElement(149).getName());
+        assertEquals(447, loaded.getElementIndex().getElement(149).getOccurrenceCount());
+
+        for (int columnNumber = 2; columnNumber <= 4; columnNumber++) {
+            Classification original = dataset.getClassification(columnNumber);
+            Classification copy = loaded.getClassification(columnNumber);
+
+            assertEquals(original.getName(), copy.getName());
+            assertEquals(dataset.getClassificationSchemas().get(columnNumber).getName(),
+                    loaded.getClassificationSchemas().get(columnNumber).getName());
+            assertEquals(original.getElements().size(), copy.getElements().size());
+            assertEquals(original.getElements().size(), copy.getElements().andCardinality(original.getElements()));
+        }
+
+        ClassificationDataset outOfCore = new BinaryMatrixLoader(true).load(matrixFile);
+        ElementSet lastElements = new ElementSet(outOfCore.getElementIndex());
+        for (int elementNumber = 100; elementNumber < 150; elementNumber++) {
+            lastElements.add(outOfCore.getElementIndex().getElement(elementNumber));
+        }
+        for (int columnNumber = 2; columnNumber <= 4; columnNumber++) {
+            Classification original = dataset.getClassification(columnNumber);
+            Classification mapped = outOfCore.getClassification(columnNumber);
+
+            assertTrue(mapped.isOutOfCore());
+            assertEquals(original.getElements().size(), mapped.getElements().size());
+            assertEquals(original.getElements().size(), mapped.getElements().andCardinality(original.getElements()));
+
+            // the word at a time operations read the mapped column without copying it
+            assertTrue(original.and(lastElements).sameElements(mapped.and(lastElements)));
+            assertEquals(original.andCardinality(lastElements), mapped.andCardinality(lastElements));
+            assertEquals(original.intersects(lastElements), mapped.intersects(lastElements));
+            ElementSet members = new ElementSet(outOfCore.getElementIndex());
+            mapped.orInto(members);
+            assertTrue(original.getElements().sameElements(members));
+        }
+    }
+}
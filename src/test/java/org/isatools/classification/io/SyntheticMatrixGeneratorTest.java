@@ -0,0 +1,53 @@
+package org.isatools.classification.io;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static junit.framework.Assert.assertEquals;
+
+public class SyntheticMatrixGeneratorTest {
+
+    @Test
+    public void testOverlapRateIsTheShareOfElementsInTwoClassifications() throws IOException {
+        SyntheticMatrixGenerator generator = new SyntheticMatrixGenerator(2000, 4, 2);
+        generator.setDensity(1);
+
+        generator.setOverlapRate(1);
+        assertEquals(1.0, getOverlap(generator), 1e-9);
+
+        generator.setOverlapRate(0.5);
+        assertEquals(0.5, getOverlap(generator), 0.03);
+    }
+
+    /**
+     * @return share of the elements classified by a schema which the schema puts in two of its classifications
+     */
+    private double getOverlap(SyntheticMatrixGenerator generator) throws IOException {
+        StringWriter matrix = new StringWriter();
+        generator.generate(matrix);
+
+        String[] rows = matrix.toString().split("\n");
+        int classified = 0;
+        int overlapping = 0;
+        for (int row = 1; row < rows.length; row++) {
+            String[] cells = rows[row].split("\t", -1);
+            for (int schema = 0; schema < 4; schema++) {
+                int classifications = 0;
+                for (int classification = 0; classification < 2; classification++) {
+                    if (cells[2 + schema * 2 + classification].length() > 0) {
+                        classifications++;
+                    }
+                }
+                if (classifications > 0) {
+                    classified++;
+                }
+                if (classifications == 2) {
+                    overlapping++;
+                }
+            }
+        }
+        return overlapping / (double) classified;
+    }
+}
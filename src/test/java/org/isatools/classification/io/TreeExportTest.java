@@ -0,0 +1,118 @@
+package org.isatools.classification.io;
+
+import org.isatools.classification.Classification;
+import org.isatools.classification.ClassificationDataset;
+import org.isatools.classification.ClassificationNode;
+import org.isatools.classification.ClassificationSchema;
+import org.isatools.classification.Classifier;
+import org.isatools.classification.ElementIndex;
+import org.isatools.classification.ElementSet;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+public class TreeExportTest {
+
+    @Test
+    public void testBinaryRoundTrip() throws IOException {
+        ClassificationNode root = createTree();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new BinaryTreeWriter().write(root, output);
+        ClassificationNode loaded = new BinaryTreeReader().read(new ByteArrayInputStream(output.toByteArray()));
+
+        assertEquals("Classification", loaded.getName());
+        assertEquals("C1", loaded.getSelectedSchema().getName());
+        assertEquals(2, loaded.getChildren().size());
+
+        ClassificationNode inVitro = loaded.getChildren().get(0);
+        assertEquals("In \"Vitro\"", inVitro.getName());
+        assertEquals(3, inVitro.getElementCount());
+        assertEquals(60.0, inVitro.getOccurrenceCount());
+        assertEquals("C6", inVitro.getSelectedSchema().getName());
+        assertEquals(2, inVitro.getLeafElements().size());
+        assertEquals(1, inVitro.getChildren().size());
+        assertEquals("process 1", inVitro.getChildren().get(0).getLeafElements().iterator().next().getName());
+
+        ClassificationNode inVivo = loaded.getChildren().get(1);
+        assertNull(inVivo.getSelectedSchema());
+        assertEquals(0, inVivo.getLeafElements().size());
+    }
+
+    @Test
+    public void testJson() throws IOException {
+        StringWriter output = new StringWriter();
+        new JsonTreeWriter().write(createTree(), output);
+
+        String json = output.toString();
+        assertTrue(json.startsWith("{\"name\":\"Classification\",\"elements\":4,\"occurrences\":100.0,\"schema\":\"C1\""));
+        assertTrue(json.contains("\"name\":\"In \\\"Vitro\\\"\""));
+        assertTrue(json.contains("\"leaves\":[{\"name\":\"process 0\",\"occurrences\":10},{\"name\":\"process 2\",\"occurrences\":30}]"));
+    }
+
+    @Test
+    public void testRootCountsOfClassifiedTree() throws IOException {
+        ClassificationDataset dataset = new ClassificationDataset();
+        Classification[] classifications = new Classification[]{
+                dataset.addClassification(2, "C1", "A"), dataset.addClassification(3, "C1", "B"),
+                dataset.addClassification(4, "C2", "C"), dataset.addClassification(5, "C2", "D"),
+                dataset.addClassification(6, "C2", "E")};
+        for (int elementNumber = 0; elementNumber < 6; elementNumber++) {
+            dataset.addElement("process " + elementNumber, (elementNumber + 1) * 10);
+            classifications[elementNumber % 2].addElement(dataset.getElementIndex().getElement(elementNumber));
+            classifications[2 + elementNumber % 3].addElement(dataset.getElementIndex().getElement(elementNumber));
+        }
+        // classified by neither schema, so not part of the tree
+        dataset.addElement("process 6", 1000);
+
+        Classifier classifier = new Classifier(null, 1);
+        ClassificationNode root = classifier.classify(dataset);
+        classifier.shutdown();
+        assertEquals(6, root.getElementCount());
+        assertEquals(210.0, root.getOccurrenceCount());
+
+        StringWriter json = new StringWriter();
+        new JsonTreeWriter().write(root, json);
+        assertTrue(json.toString().startsWith("{\"name\":\"Classification\",\"elements\":6,\"occurrences\":210.0,"));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new BinaryTreeWriter().write(root, output);
+        ClassificationNode loaded = new BinaryTreeReader().read(new ByteArrayInputStream(output.toByteArray()));
+        assertEquals(6, loaded.getElementCount());
+        assertEquals(210.0, loaded.getOccurrenceCount());
+    }
+
+    private ClassificationNode createTree() {
+        ElementIndex index = new ElementIndex();
+        for (int elementNumber = 0; elementNumber < 4; elementNumber++) {
+            index.addElement("process " + elementNumber, (elementNumber + 1) * 10);
+        }
+
+        ClassificationNode root = new ClassificationNode("Classification", 4, 100);
+        root.setSelectedSchema(new ClassificationSchema("C1", index));
+
+        ClassificationNode inVitro = new ClassificationNode("In \"Vitro\"", 3, 60);
+        inVitro.setSelectedSchema(new ClassificationSchema("C6", index));
+        ElementSet leaves = new ElementSet(index);
+        leaves.add(index.getElement(0));
+        leaves.add(index.getElement(2));
+        inVitro.setLeafElements(leaves);
+
+        ClassificationNode behaviour = new ClassificationNode("Behaviour", 1, 20);
+        ElementSet behaviourLeaves = new ElementSet(index);
+        behaviourLeaves.add(index.getElement(1));
+        behaviour.setLeafElements(behaviourLeaves);
+        inVitro.addChild(behaviour);
+
+        root.addChild(inVitro);
+        root.addChild(new ClassificationNode("In Vivo", 1, 40));
+        return root;
+    }
+}
@@ -0,0 +1,69 @@
+package org.isatools.classification.monitor;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+public class ClassificationMetricsTest {
+
+    @Test
+    public void testRunsAreTotalledInParent() {
+        ClassificationMetrics total = new ClassificationMetrics();
+        ClassificationMetrics firstRun = new ClassificationMetrics(total);
+        ClassificationMetrics secondRun = new ClassificationMetrics(total);
+
+        firstRun.getCounter(ClassificationMetrics.NODES).add(3);
+        secondRun.getCounter(ClassificationMetrics.NODES).increment();
+        firstRun.getGauge(ClassificationMetrics.DEPTH).recordMaximum(4);
+        secondRun.getGauge(ClassificationMetrics.DEPTH).recordMaximum(2);
+        firstRun.getTimer(ClassificationMetrics.NODE_FITNESS).record(2000000);
+        secondRun.getTimer(ClassificationMetrics.NODE_FITNESS).record(6000000);
+
+        assertSame(firstRun.getCounter(ClassificationMetrics.NODES), firstRun.getCounter(ClassificationMetrics.NODES));
+        assertEquals(3, firstRun.getCounter(ClassificationMetrics.NODES).getCount());
+        assertEquals(4, total.getCounter(ClassificationMetrics.NODES).getCount());
+        assertEquals(2, secondRun.getGauge(ClassificationMetrics.DEPTH).getValue());
+        assertEquals(4, total.getGauge(ClassificationMetrics.DEPTH).getValue());
+
+        Timer totalFitness = total.getTimer(ClassificationMetrics.NODE_FITNESS);
+        assertEquals(2, totalFitness.getCount());
+        assertEquals(8.0, totalFitness.getTotalMillis(), 1e-9);
+        assertEquals(4.0, totalFitness.getMeanMillis(), 1e-9);
+        assertEquals(6.0, totalFitness.getMaxMillis(), 1e-9);
+
+        String summary = total.getSummary();
+        assertTrue(summary.contains(ClassificationMetrics.NODES + ": 4"));
+        assertTrue(summary.contains(ClassificationMetrics.DEPTH + ": 4"));
+        assertTrue(summary.contains(ClassificationMetrics.NODE_FITNESS + ": count=2"));
+    }
+
+    @Test
+    public void testRunsAreAddedToTotal() {
+        ClassificationMetrics total = new ClassificationMetrics();
+        ClassificationMetrics firstRun = new ClassificationMetrics();
+        ClassificationMetrics secondRun = new ClassificationMetrics();
+
+        firstRun.getCounter(ClassificationMetrics.NODES).add(3);
+        firstRun.getGauge(ClassificationMetrics.DEPTH).recordMaximum(4);
+        firstRun.getTimer(ClassificationMetrics.NODE_FITNESS).record(2000000);
+        secondRun.getCounter(ClassificationMetrics.NODES).increment();
+        secondRun.getGauge(ClassificationMetrics.DEPTH).recordMaximum(2);
+        secondRun.getTimer(ClassificationMetrics.NODE_FITNESS).record(6000000);
+        secondRun.getTimer(ClassificationMetrics.NODE_FITNESS).record(1000000);
+
+        // nothing reaches the total until a run is added
+        assertEquals(0, total.getCounter(ClassificationMetrics.NODES).getCount());
+
+        total.add(firstRun);
+        total.add(secondRun);
+
+        assertEquals(4, total.getCounter(ClassificationMetrics.NODES).getCount());
+        assertEquals(4, total.getGauge(ClassificationMetrics.DEPTH).getValue());
+        Timer totalFitness = total.getTimer(ClassificationMetrics.NODE_FITNESS);
+        assertEquals(3, totalFitness.getCount());
+        assertEquals(9.0, totalFitness.getTotalMillis(), 1e-9);
+        assertEquals(6.0, totalFitness.getMaxMillis(), 1e-9);
+    }
+}
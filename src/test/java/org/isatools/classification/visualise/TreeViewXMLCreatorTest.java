@@ -0,0 +1,29 @@
+package org.isatools.classification.visualise;
+
+import org.isatools.classification.ElementIndex;
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static junit.framework.Assert.assertTrue;
+
+public class TreeViewXMLCreatorTest {
+
+    @Test
+    public void testAttributeValuesAreEscaped() {
+        ElementIndex index = new ElementIndex();
+        StringWriter output = new StringWriter();
+
+        TreeViewXMLCreator creator = new TreeViewXMLCreator();
+        creator.generateStart(output);
+        creator.addTo("Cells & \"Tissues\"");
+        creator.addTo(index.addElement("<stain>", 3));
+        creator.closeBranch();
+        creator.closeTree();
+
+        String tree = output.toString();
+        assertTrue(tree.contains("value= \"Cells &amp; &quot;Tissues&quot;\""));
+        assertTrue(tree.contains("value= \"&lt;stain&gt; #3\""));
+        assertTrue(tree.trim().endsWith("</tree>"));
+    }
+}